@@ -18,6 +18,8 @@ package abstrys.NeRPN;
 import javax.swing.JFrame;
 import java.awt.Container;
 import java.awt.event.*;
+import java.io.IOException;
+import java.nio.file.Paths;
 
 // Current issues:
 // 0001: Need to make the input panel get keyboard focus every time the frame
@@ -49,7 +51,33 @@ public class NeRPN extends JFrame {
     }
 
     static public void main(String[] args) {
+        if (args.length > 0) {
+            System.exit(runFiles(args));
+        }
         NeRPN app = new NeRPN();
     }
+
+    /**
+     * Evaluates the given files in order without starting the user
+     * interface, then prints the stack.
+     * @return the process exit status.
+     */
+    static int runFiles(String[] paths) {
+        RPNCalc calc = new RPNCalc();
+        RPNFileReader reader = new RPNFileReader(calc);
+        for (String path : paths) {
+            try {
+                reader.read(Paths.get(path));
+            } catch (IOException e) {
+                System.err.println(path + ": " + e.getMessage());
+                return 1;
+            } catch (ArithmeticException | NumberFormatException e) {
+                System.err.println(path + ", byte " + reader.getPosition() + ": " + e.getMessage());
+                return 1;
+            }
+        }
+        System.out.print(calc);
+        return 0;
+    }
 }
 
@@ -0,0 +1,195 @@
+//  NeRPN: A minimalistic RPN Calculator in Java.
+//  Copyright © 2007-2019 Eron J. Hennessey
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+package abstrys.NeRPN;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Runs a generated workload through RPNCalc and reports how it performed, so
+ * that releases can be compared on the same workload.
+ *
+ * Usage: RPNBench [expressions] [seed]
+ *
+ * The expressions are evaluated one token at a time with push(String), as
+ * the user interface does, and then all at once through RPNFileReader. The
+ * report gives throughput, latency percentiles per expression, the
+ * allocation rate of the benchmark thread and the peak heap use.
+ */
+public class RPNBench {
+
+    static final int DEFAULT_EXPRESSIONS = 200000;
+    static final long DEFAULT_SEED = 20070101L;
+    static final int MAX_HEIGHT = 1000; // the stack is cleared above this.
+
+    public static void main(String[] args) {
+        final int count = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_EXPRESSIONS;
+        final long seed = (args.length > 1) ? Long.parseLong(args[1]) : DEFAULT_SEED;
+
+        // generate the workload up front, so that it isn't measured.
+        RPNWorkload workload = new RPNWorkload(seed);
+        String[][] expressions = new String[count][];
+        StringBuilder text = new StringBuilder();
+        long tokens = 0;
+        for (int i = 0; i < count; i++) {
+            String line = workload.nextExpression();
+            expressions[i] = line.split(" ");
+            tokens += expressions[i].length;
+            text.append(line).append('\n');
+        }
+        byte[] bytes = text.toString().getBytes(StandardCharsets.US_ASCII);
+
+        System.out.println("NeRPN benchmark: " + count + " expressions, " + tokens
+            + " tokens, seed " + seed);
+
+        // warm up both paths.
+        runTokens(expressions, Math.min(count, 20000), new long[count]);
+        runFile(bytes);
+
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+        final long alloc_start = allocatedBytes();
+
+        long[] latencies = new long[count];
+        final long start = System.nanoTime();
+        final int errors = runTokens(expressions, count, latencies);
+        final long elapsed = System.nanoTime() - start;
+        final long allocated = allocatedBytes() - alloc_start;
+
+        final long file_start = System.nanoTime();
+        runFile(bytes);
+        final long file_elapsed = System.nanoTime() - file_start;
+
+        Arrays.sort(latencies);
+        final double seconds = elapsed / 1e9;
+        System.out.printf("push(String):  %,.0f expressions/s, %,.0f tokens/s, %d errors%n",
+            count / seconds, tokens / seconds, errors);
+        System.out.printf("latency (us):  p50 %.1f  p90 %.1f  p99 %.1f  p99.9 %.1f  max %.1f%n",
+            percentile(latencies, 50), percentile(latencies, 90), percentile(latencies, 99),
+            percentile(latencies, 99.9), latencies[count - 1] / 1e3);
+        if (alloc_start >= 0) {
+            System.out.printf("allocation:    %,.1f MB/s, %,.0f bytes/expression%n",
+                allocated / seconds / 1e6, (double) allocated / count);
+        } else {
+            System.out.println("allocation:    not available on this VM");
+        }
+        System.out.printf("peak heap:     %,.1f MB%n", peakHeap() / 1e6);
+        System.out.printf("RPNFileReader: %,.0f tokens/s (%d bytes)%n",
+            tokens / (file_elapsed / 1e9), bytes.length);
+    }
+
+    /**
+     * Evaluates expressions one token at a time, recording the time taken by
+     * each.
+     * @return the number of expressions that failed.
+     */
+    static int runTokens(String[][] expressions, int count, long[] latencies) {
+        RPNCalc calc = newCalc();
+        int errors = 0;
+        for (int i = 0; i < count; i++) {
+            if (calc.getStackHeight() > MAX_HEIGHT) {
+                calc.doOperation(RPNCalc.Ops.CLEAR);
+            }
+            final String[] expression = expressions[i];
+            final long t = System.nanoTime();
+            try {
+                for (String token : expression) {
+                    calc.push(token);
+                }
+            } catch (ArithmeticException | NumberFormatException e) {
+                errors++;
+            }
+            latencies[i] = System.nanoTime() - t;
+        }
+        return errors;
+    }
+
+    /**
+     * Evaluates the whole workload through RPNFileReader, restarting after
+     * each failed token.
+     */
+    static void runFile(byte[] bytes) {
+        RPNCalc calc = newCalc();
+        RPNFileReader reader = new RPNFileReader(calc);
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        while (buf.hasRemaining()) {
+            try {
+                reader.read(buf);
+                buf.position(buf.limit());
+            } catch (ArithmeticException | NumberFormatException e) {
+                // skip the failed token.
+                int pos = (int) reader.getPosition();
+                while ((pos < bytes.length) && (bytes[pos] != ' ') && (bytes[pos] != '\n')) {
+                    pos++;
+                }
+                buf.position(pos);
+                if (calc.getStackHeight() > MAX_HEIGHT) {
+                    calc.doOperation(RPNCalc.Ops.CLEAR);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a calculator with the limits a server would set.
+     */
+    static RPNCalc newCalc() {
+        RPNCalc calc = new RPNCalc();
+        calc.setSeed(DEFAULT_SEED);
+        calc.setMaxDigits(100000);
+        calc.setMaxStackHeight(100000);
+        calc.setOperationTimeout(1000);
+        return calc;
+    }
+
+    static double percentile(long[] sorted, double pct) {
+        int i = (int) Math.ceil(pct / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(i, sorted.length - 1))] / 1e3;
+    }
+
+    /**
+     * Get the number of bytes allocated by this thread, or -1 if the VM can't
+     * tell.
+     */
+    static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(
+                Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * Get the sum of the peak use of each heap memory pool.
+     */
+    static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
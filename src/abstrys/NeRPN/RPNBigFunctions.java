@@ -0,0 +1,164 @@
+//  NeRPN: A minimalistic RPN Calculator in Java.
+//  Copyright © 2007-2019 Eron J. Hennessey
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+package abstrys.NeRPN;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * Elementary functions computed in BigDecimal to any precision, for the
+ * places where double precision isn't enough.
+ *
+ * The series are summed at a few guard digits above the requested
+ * precision, and the result is rounded to it.
+ */
+final class RPNBigFunctions {
+
+    private static final double LOG10_2 = Math.log10(2);
+    private static final BigDecimal TWO = BigDecimal.valueOf(2);
+
+    // B(2k) / (2k (2k - 1)), the coefficients of Stirling's series, as
+    // numerator and denominator pairs, for k = 1 to 11.
+    private static final long[][] STIRLING = {
+        {1, 12}, {-1, 360}, {1, 1260}, {-1, 1680}, {1, 1188},
+        {-691, 360360}, {1, 156}, {-3617, 122400}, {43867, 244188},
+        {-174611, 125400}, {77683, 5796}
+    };
+
+    private RPNBigFunctions() {
+    }
+
+    /**
+     * Computes e^x.
+     */
+    static BigDecimal exp(BigDecimal x, MathContext mc) {
+        // sum the series for x / 2^k, where it converges quickly, and square
+        // the result k times; each squaring costs a bit of precision.
+        int k = Math.max(0, Math.getExponent(x.doubleValue()) + 8);
+        MathContext wp = new MathContext(mc.getPrecision() + (int) (k * LOG10_2) + 5);
+        BigDecimal r = x.divide(TWO.pow(k), wp);
+        BigDecimal eps = BigDecimal.ONE.movePointLeft(wp.getPrecision());
+        BigDecimal sum = BigDecimal.ONE;
+        BigDecimal term = BigDecimal.ONE;
+        for (int i = 1; term.abs().compareTo(eps) > 0; i++) {
+            term = term.multiply(r, wp).divide(BigDecimal.valueOf(i), wp);
+            sum = sum.add(term, wp);
+        }
+        for (int i = 0; i < k; i++) {
+            sum = sum.multiply(sum, wp);
+        }
+        return sum.round(mc);
+    }
+
+    /**
+     * Computes the natural log of x, which must be positive.
+     */
+    static BigDecimal ln(BigDecimal x, MathContext mc) throws ArithmeticException {
+        if (x.signum() <= 0) {
+            throw new ArithmeticException("Log of a number that isn't positive.");
+        }
+        // x = m * 2^k, with m near 1; then ln(x) = 2 atanh((m-1)/(m+1)) + k ln(2).
+        int k = (int) Math.round(x.unscaledValue().bitLength() - x.scale() / LOG10_2) - 1;
+        MathContext wp = new MathContext(mc.getPrecision() + 10 + (int) Math.log10(Math.abs(k) + 1));
+        BigDecimal m = (k >= 0) ? x.divide(TWO.pow(k), wp) : x.multiply(TWO.pow(-k), wp);
+        BigDecimal z = m.subtract(BigDecimal.ONE).divide(m.add(BigDecimal.ONE), wp);
+        BigDecimal ln2 = atanh(BigDecimal.ONE.divide(BigDecimal.valueOf(3), wp), wp).multiply(TWO);
+        BigDecimal result = atanh(z, wp).multiply(TWO).add(ln2.multiply(BigDecimal.valueOf(k)), wp);
+        return result.round(mc);
+    }
+
+    /**
+     * Computes pi, by Machin's formula.
+     */
+    static BigDecimal pi(MathContext mc) {
+        MathContext wp = new MathContext(mc.getPrecision() + 5);
+        BigDecimal a = arccot(5, wp).multiply(BigDecimal.valueOf(16));
+        BigDecimal b = arccot(239, wp).multiply(BigDecimal.valueOf(4));
+        return a.subtract(b).round(mc);
+    }
+
+    /**
+     * Approximates n! with Stirling's series. The series only reaches the
+     * precision of mc once n is large enough.
+     * @return n!, or null if n is too small for this precision.
+     */
+    static BigDecimal factorial(long n, MathContext mc) {
+        // the error is less than the first term that is left out.
+        final int p = mc.getPrecision() + 3;
+        long[] last = STIRLING[STIRLING.length - 1];
+        double bound = Math.log10((double) last[0] / last[1])
+            - (2 * STIRLING.length - 1) * Math.log10(n);
+        if ((n < 2) || (bound > -p)) {
+            return null;
+        }
+
+        // ln(n!) needs p digits after the point, and the log10 of n! has
+        // as many digits before it.
+        double log10 = (n + 0.5) * Math.log10(n) - n / Math.log(10);
+        MathContext wp = new MathContext(p + 5 + (int) Math.log10(log10 + 1));
+        BigDecimal bn = BigDecimal.valueOf(n);
+        BigDecimal ln_n = ln(bn, wp);
+        BigDecimal sum = bn.add(new BigDecimal("0.5")).multiply(ln_n, wp)
+            .subtract(bn)
+            .add(ln(pi(wp).multiply(TWO), wp).divide(TWO, wp), wp);
+        BigDecimal eps = BigDecimal.ONE.movePointLeft(p);
+        BigDecimal power = bn; // n^(2k-1)
+        BigDecimal n2 = bn.multiply(bn);
+        for (int k = 0; k < STIRLING.length - 1; k++) {
+            BigDecimal term = BigDecimal.valueOf(STIRLING[k][0])
+                .divide(BigDecimal.valueOf(STIRLING[k][1]).multiply(power), wp);
+            if (term.abs().compareTo(eps) < 0) {
+                break;
+            }
+            sum = sum.add(term, wp);
+            power = power.multiply(n2);
+        }
+
+        // n! = 10^(e + f) = 10^f * 10^e, for an integer e and 0 <= f < 1.
+        BigDecimal ln10 = ln(BigDecimal.TEN, wp);
+        BigDecimal l = sum.divide(ln10, wp);
+        BigDecimal e = l.setScale(0, RoundingMode.FLOOR);
+        BigDecimal f = l.subtract(e);
+        MathContext rp = new MathContext(mc.getPrecision() + 2);
+        return exp(f.multiply(ln10, wp), rp).scaleByPowerOfTen(e.intValueExact()).round(mc);
+    }
+
+    private static BigDecimal atanh(BigDecimal z, MathContext wp) {
+        BigDecimal eps = BigDecimal.ONE.movePointLeft(wp.getPrecision());
+        BigDecimal z2 = z.multiply(z, wp);
+        BigDecimal power = z;
+        BigDecimal sum = z;
+        for (int i = 3; power.abs().compareTo(eps) > 0; i += 2) {
+            power = power.multiply(z2, wp);
+            sum = sum.add(power.divide(BigDecimal.valueOf(i), wp), wp);
+        }
+        return sum;
+    }
+
+    private static BigDecimal arccot(int q, MathContext wp) {
+        BigDecimal eps = BigDecimal.ONE.movePointLeft(wp.getPrecision());
+        BigDecimal q2 = BigDecimal.valueOf((long) q * q);
+        BigDecimal power = BigDecimal.ONE.divide(BigDecimal.valueOf(q), wp);
+        BigDecimal sum = power;
+        for (int i = 3; power.compareTo(eps) > 0; i += 2) {
+            power = power.divide(q2, wp);
+            BigDecimal term = power.divide(BigDecimal.valueOf(i), wp);
+            sum = ((i & 2) != 0) ? sum.subtract(term, wp) : sum.add(term, wp);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,126 @@
+//  NeRPN: A minimalistic RPN Calculator in Java.
+//  Copyright © 2007-2019 Eron J. Hennessey
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+package abstrys.NeRPN;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Arithmetic on very large operands, spread over the cores of the machine.
+ *
+ * Multiplication of operands above PARALLEL_THRESHOLD bits is split
+ * Karatsuba-style (Toom-2) into three smaller products that are computed as
+ * fork-join tasks, recursively, until the pieces are small enough for
+ * BigInteger.multiply(). Smaller operands, and machines with a single core,
+ * use BigInteger.multiply() directly.
+ */
+final class RPNBigMath {
+
+    // about 79,000 decimal digits.
+    static final int PARALLEL_THRESHOLD = 1 << 18;
+
+    private RPNBigMath() {
+    }
+
+    /**
+     * Multiplies two BigDecimals exactly.
+     */
+    static BigDecimal multiply(BigDecimal x, BigDecimal y) throws ArithmeticException {
+        if (!isParallel(x.unscaledValue(), y.unscaledValue())) {
+            return x.multiply(y);
+        }
+        return new BigDecimal(multiply(x.unscaledValue(), y.unscaledValue()),
+            Math.addExact(x.scale(), y.scale()));
+    }
+
+    /**
+     * Multiplies two BigIntegers.
+     */
+    static BigInteger multiply(BigInteger a, BigInteger b) {
+        if (!isParallel(a, b)) {
+            return a.multiply(b);
+        }
+        return ForkJoinPool.commonPool().invoke(new MultiplyTask(a, b));
+    }
+
+    private static boolean isParallel(BigInteger a, BigInteger b) {
+        return (Math.min(a.bitLength(), b.bitLength()) >= PARALLEL_THRESHOLD)
+            && (ForkJoinPool.getCommonPoolParallelism() > 1);
+    }
+
+    /**
+     * Computes one product, splitting it into smaller products computed by
+     * subtasks if the operands are large enough.
+     */
+    private static class MultiplyTask extends RecursiveTask<BigInteger> {
+        private final BigInteger a;
+        private final BigInteger b;
+
+        MultiplyTask(BigInteger a, BigInteger b) {
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        protected BigInteger compute() {
+            final int alen = a.bitLength();
+            final int blen = b.bitLength();
+            if (Math.min(alen, blen) < PARALLEL_THRESHOLD) {
+                return a.multiply(b);
+            }
+
+            BigInteger x = a.abs();
+            BigInteger y = b.abs();
+            final int half = Math.max(alen, blen) / 2;
+            BigInteger result;
+
+            if (Math.min(alen, blen) <= half) {
+                // one operand is much longer than the other: split only the
+                // long one, so that x * y = (x1 * y) << half + x0 * y.
+                if (blen > alen) {
+                    BigInteger t = x;
+                    x = y;
+                    y = t;
+                }
+                BigInteger x1 = x.shiftRight(half);
+                BigInteger x0 = x.subtract(x1.shiftLeft(half));
+                MultiplyTask high = new MultiplyTask(x1, y);
+                high.fork();
+                BigInteger low = new MultiplyTask(x0, y).compute();
+                result = high.join().shiftLeft(half).add(low);
+            } else {
+                // Karatsuba: three half-size products instead of four.
+                BigInteger x1 = x.shiftRight(half);
+                BigInteger x0 = x.subtract(x1.shiftLeft(half));
+                BigInteger y1 = y.shiftRight(half);
+                BigInteger y0 = y.subtract(y1.shiftLeft(half));
+
+                MultiplyTask high = new MultiplyTask(x1, y1);
+                MultiplyTask mid = new MultiplyTask(x1.add(x0), y1.add(y0));
+                high.fork();
+                mid.fork();
+                BigInteger p0 = new MultiplyTask(x0, y0).compute();
+                BigInteger p2 = high.join();
+                BigInteger p1 = mid.join().subtract(p2).subtract(p0);
+                result = p2.shiftLeft(2 * half).add(p1.shiftLeft(half)).add(p0);
+            }
+
+            return (a.signum() * b.signum() < 0) ? result.negate() : result;
+        }
+    }
+}
@@ -17,7 +17,9 @@ package abstrys.NeRPN;
 
 import java.math.*;
 import java.util.Stack;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.EmptyStackException;
+import java.util.SplittableRandom;
 
 // ============================================================================
 // RPNCalc.java
@@ -45,6 +47,7 @@ public class RPNCalc {
         ABS, // calculates |x|
         ACOS, // calculates acos(x)
         ADD, // calculates y+x
+        APPROX, // selects decimal arithmetic
         ASIN, // calculates asin(x)
         ATAN, // calculates atan(x)
         CBRT, // calculates cbrt(x)
@@ -59,6 +62,7 @@ public class RPNCalc {
         E, // calculates e^x
         EN1, // calculates e^(1/x)
         ENG, // selects engineering display mode
+        EXACT, // selects exact rational arithmetic
         EXP, // calculates 10^x
         EXPN1, // calculates 10^(1/x)
         FACT, // calculates x!
@@ -76,14 +80,24 @@ public class RPNCalc {
         POW, // calculates y^x
         RAD, // convert x to radians
         RAND, // calculates random();
+        RANDN, // pushes x random numbers
         ROOT, // calculates y^1/x
         ROT, // rotate stack by x
+        SADD, // adds x to the statistics accumulator
         SCI, // selects scientific display mode
+        SCLR, // clears the statistics accumulator
         SIN, // calculates sin(x)
         SINH, // calculates sinh(x)
+        SMAX, // pushes the greatest accumulated value
+        SMEAN, // pushes the mean of the accumulated values
+        SMIN, // pushes the least accumulated value
+        SN, // pushes the number of accumulated values
         SQRT, // calculates sqrt(x)
+        SSDEV, // pushes the standard deviation of the accumulated values
+        SSUM, // pushes the sum of the accumulated values
         STD, // selects standard display mode
         SUBT, // calculates y-x
+        SVAR, // pushes the variance of the accumulated values
         SWAP, // swap x and y
         TAN, // calculates tan(x)
         TANH,   // calculates tanh(x)
@@ -95,71 +109,73 @@ public class RPNCalc {
     private final String ERR_NOT_IMPL = "Operation not implemented!";
     private final String ERR_DIV_BY_ZERO = "Division by zero.";
     private final String ERR_UNKNOWN_ERR = "Unknown Error.";
-    private Stack<BigDecimal> rpnstack;
-    private HashMap<String, Ops> cmdmap;
-    private HashMap<String, BigDecimal> constmap;
+    private final String ERR_LIMIT_DIGITS = "Result would exceed the digit limit.";
+    private final String ERR_LIMIT_STACK = "Stack height limit reached.";
+    private final String ERR_LIMIT_TIME = "Operation timed out.";
+    private final String ERR_NEG_ROOT = "Even root of a negative number.";
+    private final String ERR_NEED_COUNT = "Last element must not be negative for this operation!";
+    private final String ERR_EMPTY_REGISTER = "Register is empty!";
+    private static final double LOG10_2 = Math.log10(2);
+    // BigDecimal.pow(int, MathContext), used by root(), rejects larger powers.
+    private static final BigDecimal MAX_ROOT = new BigDecimal(999999999);
+    private static final int LAZY_DIGITS = 1000; // smallest deferred result.
+    private Stack<Number> rpnstack; // holds BigDecimals and RPNRationals.
     private DispMode disp_mode;
+    private boolean exact = false; // true for rational arithmetic.
+    private boolean lazy = false; // true to defer expensive results.
     private int disp_prec; // the display precision.
+    private MathContext disp_mc;
+    private MathContext calc_mc; // precision of division, roots, etc.
+    private MathContext double_mc; // calc_mc, but at most a double's 16 digits.
+
+    // resource limits; zero means unlimited.
+    private int max_digits = 0;
+    private int max_stack = 0;
+    private long op_timeout = 0; // milliseconds
+    private long op_deadline = 0; // System.nanoTime() value, or 0 for none.
+    private int op_depth = 0; // nesting level of doOperation calls.
+
+    // change tracking, for stack listeners.
+    private final int NO_CHANGE = Integer.MAX_VALUE;
+    private ArrayList<RPNStackListener> listeners = new ArrayList<RPNStackListener>();
+    private int low_mark = NO_CHANGE; // lowest index changed since the last event.
+    private int start_height = 0; // stack height at the last event.
+    private boolean disp_changed = false;
+    private int update_depth = 0; // nesting level of beginUpdate calls.
+
+    private SplittableRandom rng = new SplittableRandom();
+    private RPNStats stats;
+    private RPNRegisters registers = new RPNRegisters();
+    private RPNRegisters global_registers = RPNRegisters.getGlobal();
+    private static final int RAND_DIGITS = 18;
+    private static final long[] POW10 = {
+        1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L,
+        100000000L, 1000000000L, 10000000000L, 100000000000L,
+        1000000000000L, 10000000000000L, 100000000000000L,
+        1000000000000000L, 10000000000000000L, 100000000000000000L,
+        1000000000000000000L
+    };
+
+    /**
+     * Thrown when an operation would exceed one of the calculator's resource
+     * limits. The stack is left as it was before the operation started.
+     */
+    public static class LimitException extends ArithmeticException {
+        public LimitException(String msg) {
+            super(msg);
+        }
+    }
 
     /**
      * Default Constructor
      */
     public RPNCalc() {
-        rpnstack = new Stack<BigDecimal>();
-
-        cmdmap = new HashMap<String, Ops>();
-        cmdmap.put("!", Ops.FACT);
-        cmdmap.put("%", Ops.MOD);
-        cmdmap.put("*", Ops.MULT);
-        cmdmap.put("+", Ops.ADD);
-        cmdmap.put("-", Ops.SUBT);
-        cmdmap.put("/", Ops.DIV);
-        cmdmap.put("^", Ops.POW);
-        cmdmap.put("abs", Ops.ABS);
-        cmdmap.put("acos", Ops.ACOS);
-        cmdmap.put("asin", Ops.ASIN);
-        cmdmap.put("atan", Ops.ATAN);
-        cmdmap.put("c", Ops.CLEAR);
-        cmdmap.put("cbrt", Ops.CBRT);
-        cmdmap.put("ceil", Ops.CEIL);
-        cmdmap.put("cos", Ops.COS);
-        cmdmap.put("cosh", Ops.COSH);
-        cmdmap.put("deg", Ops.DEG);
-        cmdmap.put("del", Ops.DELETE);
-        cmdmap.put("dup", Ops.DUP);
-        cmdmap.put("e", Ops.E);
-        cmdmap.put("en1", Ops.EN1);
-        cmdmap.put("eng", Ops.ENG);
-        cmdmap.put("exp", Ops.EXP);
-        cmdmap.put("expn1", Ops.EXPN1);
-        cmdmap.put("fix", Ops.FIX);
-        cmdmap.put("floor", Ops.FLOOR);
-        cmdmap.put("hyp", Ops.HYP);
-        cmdmap.put("inv", Ops.INV);
-        cmdmap.put("ln", Ops.LN);
-        cmdmap.put("log", Ops.LOG);
-        cmdmap.put("max", Ops.MAX);
-        cmdmap.put("min", Ops.MIN);
-        cmdmap.put("neg", Ops.NEG);
-        cmdmap.put("pow", Ops.POW);
-        cmdmap.put("rad", Ops.RAD);
-        cmdmap.put("rand", Ops.RAND);
-        cmdmap.put("root", Ops.ROOT);
-        cmdmap.put("rot", Ops.ROT);
-        cmdmap.put("sci", Ops.SCI);
-        cmdmap.put("sin", Ops.SIN);
-        cmdmap.put("sinh", Ops.SINH);
-        cmdmap.put("sqrt", Ops.SQRT);
-        cmdmap.put("std", Ops.STD);
-        cmdmap.put("swap", Ops.SWAP);
-        cmdmap.put("tan", Ops.TAN);
-        cmdmap.put("tanh", Ops.TANH);
-
-        constmap = new HashMap<String, BigDecimal>();
-        constmap.put("E", new BigDecimal(Math.E));
-        constmap.put("PI", new BigDecimal(Math.PI));
+        rpnstack = new Stack<Number>();
 
         disp_mode = DispMode.STD;
+        stats = new RPNStats(MathContext.DECIMAL128);
+        setPrecision(MathContext.DECIMAL128.getPrecision());
+        setDisplayPrecision(MathContext.DECIMAL64.getPrecision());
     }
 
     /**
@@ -168,47 +184,74 @@ public class RPNCalc {
      * @return true if the operation affects the stack; false otherwise.
      */
     public boolean doOperation(Ops op) throws ArithmeticException {
+        if (op_depth == 0) {
+            startDeadline();
+        }
+        op_depth++;
+        try {
+            return execOperation(op);
+        } finally {
+            op_depth--;
+            fireChanges();
+        }
+    }
+
+    // Operations compute their result from peeked values before touching the
+    // stack, so that a failed operation (including one that runs into a
+    // limit) leaves the stack unchanged.
+    private boolean execOperation(Ops op) throws ArithmeticException {
         switch (op) {
         case ABS:
             requireStack(1);
-            push(pop().abs());
+            if (exact) {
+                replaceTop(1, rational(0).abs());
+            } else {
+                replaceTop(1, peek().abs());
+            }
             return true;
 
         case ACOS:
             requireStack(1);
             {
-                double dvalue = pop().doubleValue();
-                push(new BigDecimal(Math.acos(dvalue)));
+                double dvalue = peek().doubleValue();
+                replaceTop(1, fromDouble(Math.acos(dvalue)));
             }
             return true;
 
         case ADD:
             requireStack(2);
-            push(pop().add(pop()));
+            if (exact) {
+                // cross-multiplying combines the sizes of both operands.
+                requireDigits(Math.floor(sizeLog10(peekValue(0)) + sizeLog10(peekValue(1))) + 1);
+                replaceTop(2, rational(1).add(rational(0)));
+            } else {
+                replaceTop(2, peek(1).add(peek(0)));
+            }
+            return true;
+
+        case APPROX:
+            exact = false;
             return true;
 
         case ASIN:
             requireStack(1);
             {
-                double dvalue = pop().doubleValue();
-                push(new BigDecimal(Math.asin(dvalue)));
+                double dvalue = peek().doubleValue();
+                replaceTop(1, fromDouble(Math.asin(dvalue)));
             }
             return true;
 
         case ATAN:
             requireStack(1);
             {
-                double dvalue = pop().doubleValue();
-                push(new BigDecimal(Math.atan(dvalue)));
+                double dvalue = peek().doubleValue();
+                replaceTop(1, fromDouble(Math.atan(dvalue)));
             }
             return true;
 
         case CBRT:
             requireStack(1);
-            {
-                double dvaluex = pop().doubleValue();
-                push(new BigDecimal(Math.cbrt(dvaluex)));
-            }
+            replaceTop(1, root(peek(), 3));
             return true;
 
         case CEIL:
@@ -218,35 +261,39 @@ public class RPNCalc {
 
         case CLEAR:
             requireStack(1);
+            markChanged(0);
             rpnstack.removeAllElements();
             return true;
 
         case COS:
             requireStack(1);
             {
-                double dvalue = pop().doubleValue();
-                push(new BigDecimal(Math.cos(dvalue)));
+                double dvalue = peek().doubleValue();
+                replaceTop(1, fromDouble(Math.cos(dvalue)));
             }
             return true;
 
         case COSH:
             requireStack(1);
             {
-                double dvalue = pop().doubleValue();
-                push(new BigDecimal(Math.cosh(dvalue)));
+                double dvalue = peek().doubleValue();
+                replaceTop(1, fromDouble(Math.cosh(dvalue)));
             }
             return true;
 
         case DEG:
             requireStack(1);
             {
-                double dvalue = pop().doubleValue();
-                push(new BigDecimal(Math.toDegrees(dvalue)));
+                double dvalue = peek().doubleValue();
+                replaceTop(1, fromDouble(Math.toDegrees(dvalue)));
             }
             return true;
 
         case DELETE:
+            // discard the entry without converting it, so that a deferred
+            // entry is never computed.
             if (rpnstack.size() >= 1) {
+                markChanged(rpnstack.size() - 1);
                 rpnstack.pop();
                 return true;
             }
@@ -254,76 +301,96 @@ public class RPNCalc {
 
         case DIV:
             requireStack(2);
-            {
-                BigDecimal x = pop();
-                if (x.equals(BigDecimal.ZERO))
-                {
-                    throw new ArithmeticException(ERR_DIV_BY_ZERO);
-                }
-                push(pop().divide(x, MathContext.DECIMAL128));
+            if (exact) {
+                // cross-multiplying combines the sizes of both operands.
+                requireDigits(Math.floor(sizeLog10(peekValue(0)) + sizeLog10(peekValue(1))) + 1);
+                replaceTop(2, rational(1).divide(rational(0)));
+            } else {
+                replaceTop(2, divide(peek(1), peek(0)));
             }
             return true;
 
         case DUP:
+            // stack entries are immutable, so the copy can share the value;
+            // a deferred entry is then computed at most once for both.
             requireStack(1);
-            push(new BigDecimal(peek().toString()));
+            requireRoom(1);
+            pushValue(rpnstack.peek());
             return true;
 
         case E:
             requireStack(1);
             {
-                double dvalue = pop().doubleValue();
-                push(new BigDecimal(Math.exp(dvalue)));
+                double dvalue = peek().doubleValue();
+                replaceTop(1, fromDouble(Math.exp(dvalue)));
             }
             return true;
 
         case EN1:
             requireStack(1);
             {
-                double dvalue = pop().doubleValue();
-                push(new BigDecimal(Math.expm1(dvalue)));
+                double dvalue = peek().doubleValue();
+                replaceTop(1, fromDouble(Math.expm1(dvalue)));
             }
             return true;
 
         case ENG:
-            disp_mode = DispMode.ENG;
+            setDispMode(DispMode.ENG);
+            return true;
+
+        case EXACT:
+            exact = true;
             return true;
 
         case EXP:
             requireStack(1);
-            {
-                push(new BigDecimal(10));
-                swap(1);
-                doOperation(Ops.POW);
-            }
+            replaceTop(1, power(BigDecimal.TEN, peek(0)));
             return true;
 
         case EXPN1:
             requireStack(1);
-            {
-                push(new BigDecimal(10));
-                doOperation(Ops.INV);
-                swap(1);
-                doOperation(Ops.POW);
-            }
+            replaceTop(1, power(BigDecimal.TEN, divide(BigDecimal.ONE, peek(0))));
             return true;
 
         case FACT:
             requireStack(1);
             requireInteger();
             {
-                BigDecimal x = pop();
-                long i = x.intValueExact() - 1;
-                while (i > 0)
-                {
-                    x = x.multiply(new BigDecimal(i--));
+                final BigDecimal x = peek();
+                final int n = x.intValueExact();
+                final double digits = factorialDigits(n);
+                requireDigits(digits);
+                if (digits > Integer.MAX_VALUE) {
+                    // the exponent of the result can't be represented.
+                    throw new ArithmeticException(ERR_OVERFLOW);
+                }
+                if (lazy && (digits > LAZY_DIGITS)) {
+                    replaceTop(1, new RPNDeferred() {
+                        protected BigDecimal compute() {
+                            return factorial(x, MathContext.UNLIMITED);
+                        }
+
+                        protected BigDecimal approximate(MathContext mc) {
+                            // Stirling's series takes the same time for any
+                            // n; it only falls short for n that are small
+                            // next to the precision, and those are quick to
+                            // multiply out, with log10(n) guard digits to
+                            // cover the rounding of n products.
+                            BigDecimal r = RPNBigFunctions.factorial(n, mc);
+                            if (r != null) {
+                                return r;
+                            }
+                            return factorial(x, new MathContext(mc.getPrecision() + 2 + (int) Math.log10(n)));
+                        }
+                    });
+                } else {
+                    replaceTop(1, factorial(x, MathContext.UNLIMITED));
                 }
-                push(x);
             }
             return true;
 
         case FIX:
-            disp_mode = DispMode.FIX;
+            setDispMode(DispMode.FIX);
             return true;
 
         case FLOOR:
@@ -334,90 +401,128 @@ public class RPNCalc {
         case HYP:
             requireStack(2);
             {
-                double dvaluex = pop().doubleValue();
-                double dvaluey = pop().doubleValue();
-                push(new BigDecimal(Math.hypot(dvaluex, dvaluey)));
+                double dvaluex = peek(0).doubleValue();
+                double dvaluey = peek(1).doubleValue();
+                replaceTop(2, fromDouble(Math.hypot(dvaluex, dvaluey)));
             }
             return true;
 
         case INV:
             requireStack(1);
-            push(new BigDecimal(1));
-            swap(1);
-            doOperation(Ops.DIV);
+            if (exact) {
+                replaceTop(1, rational(0).invert());
+            } else {
+                replaceTop(1, divide(BigDecimal.ONE, peek(0)));
+            }
             return true;
 
         case LN:
             requireStack(1);
             {
-                double dvaluex = pop().doubleValue();
-                push(new BigDecimal(Math.log(dvaluex)));
+                double dvaluex = peek().doubleValue();
+                replaceTop(1, fromDouble(Math.log(dvaluex)));
             }
             return true;
 
         case LOG:
             requireStack(1);
             {
-                double dvaluex = pop().doubleValue();
-                push(new BigDecimal(Math.log10(dvaluex)));
+                double dvaluex = peek().doubleValue();
+                replaceTop(1, fromDouble(Math.log10(dvaluex)));
             }
             return true;
 
         case MAX:
             requireStack(2);
-            push(pop().max(pop()));
+            if (exact) {
+                replaceTop(2, rational(1).max(rational(0)));
+            } else {
+                replaceTop(2, peek(1).max(peek(0)));
+            }
             return true;
 
         case MIN:
             requireStack(2);
-            push(pop().min(pop()));
+            if (exact) {
+                replaceTop(2, rational(1).min(rational(0)));
+            } else {
+                replaceTop(2, peek(1).min(peek(0)));
+            }
             return true;
 
         case MOD:
             requireStack(2);
-            push(pop().remainder(pop()));
+            if (peek(0).signum() == 0) {
+                throw new ArithmeticException(ERR_DIV_BY_ZERO);
+            }
+            replaceTop(2, peek(1).remainder(peek(0)));
             return true;
 
         case MULT:
             requireStack(2);
-            push(pop().multiply(pop()));
+            requireDigits(Math.floor(sizeLog10(peekValue(0)) + sizeLog10(peekValue(1))) + 1);
+            if (exact) {
+                replaceTop(2, rational(1).multiply(rational(0)));
+            } else {
+                replaceTop(2, RPNBigMath.multiply(peek(0), peek(1)));
+            }
             return true;
 
         case NEG:
             requireStack(1);
-            push(pop().negate());
+            if (exact) {
+                replaceTop(1, rational(0).negate());
+            } else {
+                replaceTop(1, peek().negate());
+            }
             return true;
 
         case POW:
             requireStack(2);
-            // if the x value is an integer, use the BigDecimal.pow()
-            // function, otherwise use Math.pow for non-integer x.
-            if (peekInteger()) {
-                int ivaluex = pop().intValueExact();
-                push(pop().pow(ivaluex));
+            if (exact && (peek(0).scale() <= 0)) {
+                replaceTop(2, power(rational(1), peek(0).intValueExact()));
             } else {
-                double dvaluex = pop().doubleValue();
-                double dvaluey = pop().doubleValue();
-                push(new BigDecimal(Math.pow(dvaluey, dvaluex)));
+                replaceTop(2, power(peek(1), peek(0)));
             }
             return true;
 
         case RAD:
             requireStack(1);
             {
-                double dvalue = pop().doubleValue();
-                push(new BigDecimal(Math.toRadians(dvalue)));
+                double dvalue = peek().doubleValue();
+                replaceTop(1, fromDouble(Math.toRadians(dvalue)));
             }
             return true;
 
         case RAND:
-            push(new BigDecimal(Math.random()));
+            requireRoom(1);
+            push(randomValue());
+            return true;
+
+        case RANDN:
+            requireStack(1);
+            requireInteger();
+            {
+                final int n = peek().intValueExact();
+                if (n < 0) {
+                    throw new ArithmeticException(ERR_NEED_COUNT);
+                }
+                requireRoom(n - 1);
+                pop();
+                pushRandom(n);
+            }
             return true;
 
         case ROOT:
             requireStack(2);
-            doOperation(Ops.INV); // x -> 1/x
-            doOperation(Ops.POW); // y ^ 1/x
+            {
+                BigDecimal x = peek(0);
+                if ((x.scale() <= 0) && (x.signum() > 0) && (x.compareTo(MAX_ROOT) <= 0)) {
+                    replaceTop(2, root(peek(1), x.intValue()));
+                } else {
+                    replaceTop(2, power(peek(1), divide(BigDecimal.ONE, x)));
+                }
+            }
             return true;
 
         case ROT:
@@ -425,50 +530,95 @@ public class RPNCalc {
             // pop the third number off the stack, then push it back on.
             requireStack(3);
             // the value of interest is the third from the end of the stack.
-            BigDecimal value = rpnstack.remove(rpnstack.size() - 3);
-            push(value);
+            markChanged(rpnstack.size() - 3);
+            Number value = rpnstack.remove(rpnstack.size() - 3);
+            pushValue(value);
+            return true;
+
+        case SADD:
+            requireStack(1);
+            accumulate(pop());
             return true;
 
         case SCI:
-            disp_mode = DispMode.SCI;
+            setDispMode(DispMode.SCI);
+            return true;
+
+        case SCLR:
+            stats.clear();
             return true;
 
         case SIN:
             requireStack(1);
             {
-                double dvalue = pop().doubleValue();
-                push(new BigDecimal(Math.sin(dvalue)));
+                double dvalue = peek().doubleValue();
+                replaceTop(1, fromDouble(Math.sin(dvalue)));
             }
             return true;
 
         case SINH:
             requireStack(1);
             {
-                double dvalue = pop().doubleValue();
-                push(new BigDecimal(Math.sinh(dvalue)));
+                double dvalue = peek().doubleValue();
+                replaceTop(1, fromDouble(Math.sinh(dvalue)));
             }
             return true;
 
+        case SMAX:
+            requireRoom(1);
+            push(stats.getMax());
+            return true;
+
+        case SMEAN:
+            requireRoom(1);
+            push(stats.getMean());
+            return true;
+
+        case SMIN:
+            requireRoom(1);
+            push(stats.getMin());
+            return true;
+
+        case SN:
+            requireRoom(1);
+            push(stats.getCount());
+            return true;
+
         case SQRT:
             requireStack(1);
-            {
-                double dvaluex = pop().doubleValue();
-                push(new BigDecimal(Math.sqrt(dvaluex)));
-            }
+            replaceTop(1, root(peek(), 2));
+            return true;
+
+        case SSDEV:
+            requireRoom(1);
+            push(stats.getStdDev());
+            return true;
+
+        case SSUM:
+            requireRoom(1);
+            push(stats.getSum());
             return true;
 
         case STD:
-            disp_mode = DispMode.STD;
+            setDispMode(DispMode.STD);
             return true;
 
         case SUBT:
             requireStack(2);
-            {
-                BigDecimal x = pop();
-                push(pop().subtract(x));
+            if (exact) {
+                // cross-multiplying combines the sizes of both operands.
+                requireDigits(Math.floor(sizeLog10(peekValue(0)) + sizeLog10(peekValue(1))) + 1);
+                replaceTop(2, rational(1).subtract(rational(0)));
+            } else {
+                replaceTop(2, peek(1).subtract(peek(0)));
             }
             return true;
 
+        case SVAR:
+            requireRoom(1);
+            push(stats.getVariance());
+            return true;
+
         case SWAP:
             // pop two numbers off the stack, then put them back on in the
             // reverse order.
@@ -479,16 +629,16 @@ public class RPNCalc {
         case TAN:
             requireStack(1);
             {
-                double dvalue = pop().doubleValue();
-                push(new BigDecimal(Math.tan(dvalue)));
+                double dvalue = peek().doubleValue();
+                replaceTop(1, fromDouble(Math.tan(dvalue)));
             }
             return true;
 
         case TANH:
             requireStack(1);
             {
-                double dvalue = pop().doubleValue();
-                push(new BigDecimal(Math.tanh(dvalue)));
+                double dvalue = peek().doubleValue();
+                replaceTop(1, fromDouble(Math.tanh(dvalue)));
             }
             return true;
 
@@ -501,48 +651,78 @@ public class RPNCalc {
     // STACK MANIPULATION OPERATIONS
     // ------------------------------------------------------------------------
     /**
-     * Swaps the top element with the element at the position idx.
+     * Swaps the top element with the element idx positions below it.
      */
     public void swap(int idx) throws ArithmeticException {
-        requireStack(idx);
+        requireStack(idx + 1);
 
         // can't swap an item with itself!
         if (idx == 0) {
             return;
         }
 
-        BigDecimal nv = rpnstack.remove(idx);
-        BigDecimal xv = rpnstack.pop();
-
-        rpnstack.push(nv);
-        rpnstack.insertElementAt(xv, idx);
+        final int top = rpnstack.size() - 1;
+        markChanged(top - idx);
+        Number nv = rpnstack.elementAt(top - idx);
+        rpnstack.setElementAt(rpnstack.elementAt(top), top - idx);
+        rpnstack.setElementAt(nv, top);
+        fireChanges();
     }
 
     public void push(BigDecimal val) {
+        pushValue(val);
+    }
+
+    public void push(RPNRational val) {
+        pushValue(val);
+    }
+
+    private void pushValue(Number val) {
+        // operations check for room themselves before they grow the stack.
+        if (op_depth == 0) {
+            requireRoom(1);
+        }
+        markChanged(rpnstack.size());
         rpnstack.push(val);
+        fireChanges();
+    }
+
+    /**
+     * Pushes n random numbers between 0 and 1 onto the stack.
+     */
+    public void pushRandom(int n) throws ArithmeticException {
+        if (op_depth == 0) {
+            requireRoom(n);
+        }
+        markChanged(rpnstack.size());
+        rpnstack.ensureCapacity(rpnstack.size() + n);
+        for (int i = 0; i < n; i++) {
+            rpnstack.add(randomValue());
+        }
+        fireChanges();
     }
 
     public void push(long val) {
-        rpnstack.push(new BigDecimal(val));
+        push(new BigDecimal(val));
     }
 
     public void push(double val) {
-        rpnstack.push(new BigDecimal(val));
+        push(new BigDecimal(val));
     }
 
     public void push(String val) throws NumberFormatException {
         // first check to see if this is a text operation or
         // constant value.
-        if (pushTextOp(val) || pushConstant(val)) {
+        if (pushTextOp(val) || pushConstant(val) || pushRegisterOp(val)) {
             return;
         }
 
         // if neither, try interpreting this as a number.
-        rpnstack.push(new BigDecimal(val));
+        push(new BigDecimal(val));
     }
 
     public boolean pushTextOp(String val) {
-        Ops op = cmdmap.get(val);
+        Ops op = RPNCommands.getOp(val);
         if (op != null) {
             doOperation(op);
             return true;
@@ -552,7 +732,7 @@ public class RPNCalc {
 
     public boolean pushConstant(String val)
     {
-        BigDecimal con = constmap.get(val);
+        BigDecimal con = RPNCommands.getConstant(val);
         if (con != null) {
             push(con);
             return true;
@@ -560,16 +740,589 @@ public class RPNCalc {
         return false;
     }
 
+    /**
+     * Performs a register command: sto:name stores x in a local register and
+     * rcl:name pushes its value; gsto:name and grcl:name do the same with a
+     * register in the global store. STO leaves x on the stack.
+     * @return true if val is a register command; false otherwise.
+     */
+    public boolean pushRegisterOp(String val) throws ArithmeticException {
+        int colon = val.indexOf(':');
+        if ((colon < 0) || (colon == val.length() - 1)) {
+            return false;
+        }
+
+        String cmd = val.substring(0, colon);
+        String name = val.substring(colon + 1);
+        if (cmd.equals("sto")) {
+            store(registers, name);
+        } else if (cmd.equals("rcl")) {
+            recall(registers, name);
+        } else if (cmd.equals("gsto")) {
+            store(global_registers, name);
+        } else if (cmd.equals("grcl")) {
+            recall(global_registers, name);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private void store(RPNRegisters scope, String name) throws ArithmeticException {
+        requireStack(1);
+        // deferred entries are computed first; they aren't thread-safe.
+        scope.store(name, peekValue(0));
+    }
+
+    private void recall(RPNRegisters scope, String name) throws ArithmeticException {
+        pushValue(registerValue(scope, name));
+    }
+
+    private Number registerValue(RPNRegisters scope, String name) throws ArithmeticException {
+        Number val = scope.recall(name);
+        if (val == null) {
+            throw new ArithmeticException(ERR_EMPTY_REGISTER);
+        }
+        return val;
+    }
+
     /**
      * Pop the most recent element off the stack.
      * @return the value of the most recent element.
+     * @throws EmptyStackException if the stack is empty.
      */
     public BigDecimal pop() {
-        return rpnstack.pop();
+        // convert before popping, so that the entry is kept if a deferred
+        // value can't be computed.
+        BigDecimal val = peek();
+        markChanged(rpnstack.size() - 1);
+        rpnstack.pop();
+        fireChanges();
+        return val;
     }
 
     public BigDecimal peek() {
-        return rpnstack.peek();
+        if (rpnstack.empty()) {
+            throw new EmptyStackException();
+        }
+        return peek(0);
+    }
+
+    /**
+     * Peek at the element i positions down from the top of the stack, as a
+     * decimal.
+     */
+    private BigDecimal peek(int i) {
+        return toDecimal(peekValue(i));
+    }
+
+    /**
+     * Peek at the element i positions down from the top of the stack, as it
+     * is stored. A deferred entry is computed, and replaced by its value.
+     */
+    private Number peekValue(int i) {
+        return forceEntry(rpnstack.size() - 1 - i);
+    }
+
+    /**
+     * Computes the stack entry at index i if it is deferred. The value is
+     * unchanged, so no event is fired.
+     */
+    private Number forceEntry(int i) throws ArithmeticException {
+        Number val = rpnstack.elementAt(i);
+        if (val instanceof RPNDeferred) {
+            // outside of an operation, computing the value is timed as an
+            // operation of its own.
+            if (op_depth == 0) {
+                startDeadline();
+            }
+            val = ((RPNDeferred) val).force();
+            rpnstack.setElementAt(val, i);
+        }
+        return val;
+    }
+
+    /**
+     * Peek at the element i positions down from the top of the stack, as a
+     * rational.
+     */
+    private RPNRational rational(int i) {
+        return RPNRational.valueOf(peekValue(i));
+    }
+
+    /**
+     * Converts a stack entry to a decimal. Rationals are rounded to the
+     * calculation precision, unless they are integers.
+     */
+    private BigDecimal toDecimal(Number val) {
+        if (val instanceof RPNRational) {
+            return ((RPNRational) val).toBigDecimal(calc_mc);
+        }
+        return (BigDecimal) val;
+    }
+
+    /**
+     * Replaces the top count elements of the stack with a single value.
+     */
+    private void replaceTop(int count, Number val) {
+        markChanged(rpnstack.size() - count);
+        for (int i = 0; i < count; i++) {
+            rpnstack.pop();
+        }
+        rpnstack.push(val);
+        fireChanges();
+    }
+
+    // ------------------------------------------------------------------------
+    // CHANGE EVENTS
+    // ------------------------------------------------------------------------
+    /**
+     * Adds a listener that is told about each change to the stack. Changes
+     * made through the Stack returned by getStack() aren't reported.
+     */
+    public void addStackListener(RPNStackListener l) {
+        listeners.add(l);
+    }
+
+    public void removeStackListener(RPNStackListener l) {
+        listeners.remove(l);
+    }
+
+    /**
+     * Starts a burst of changes. Until the matching call to endUpdate(),
+     * changes are collected rather than reported; endUpdate() then reports
+     * them as a single event. Calls may be nested.
+     */
+    public void beginUpdate() {
+        update_depth++;
+    }
+
+    public void endUpdate() {
+        if (update_depth > 0) {
+            update_depth--;
+            fireChanges();
+        }
+    }
+
+    /**
+     * Records that the stack is about to change at index i and above.
+     */
+    private void markChanged(int i) {
+        if (i < low_mark) {
+            low_mark = i;
+        }
+    }
+
+    private void setDispMode(DispMode mode) {
+        disp_mode = mode;
+        disp_changed = true;
+    }
+
+    /**
+     * Reports the changes made since the last event, unless an operation or
+     * update is still under way.
+     */
+    private void fireChanges() {
+        if ((op_depth > 0) || (update_depth > 0)) {
+            return;
+        }
+
+        if (low_mark != NO_CHANGE) {
+            final int index = low_mark;
+            final int removed = start_height - index;
+            final int added = rpnstack.size() - index;
+            low_mark = NO_CHANGE;
+            start_height = rpnstack.size();
+
+            RPNStackEvent.Type type;
+            if ((removed == 0) && (added == 0)) {
+                type = null; // entries were pushed and popped again.
+            } else if ((index == 0) && (added == 0)) {
+                type = RPNStackEvent.Type.CLEARED;
+            } else if (removed == 0) {
+                type = RPNStackEvent.Type.PUSHED;
+            } else if (added == 0) {
+                type = RPNStackEvent.Type.POPPED;
+            } else {
+                type = RPNStackEvent.Type.REPLACED;
+            }
+            if (type != null) {
+                fireEvent(new RPNStackEvent(this, type, index, removed, added));
+            }
+        }
+
+        if (disp_changed) {
+            disp_changed = false;
+            fireEvent(new RPNStackEvent(this, RPNStackEvent.Type.DISP_MODE, 0, 0, 0));
+        }
+    }
+
+    private void fireEvent(RPNStackEvent e) {
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).stackChanged(e);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // ARITHMETIC HELPERS
+    // ------------------------------------------------------------------------
+    private BigDecimal divide(BigDecimal y, BigDecimal x) throws ArithmeticException {
+        if (x.signum() == 0) {
+            throw new ArithmeticException(ERR_DIV_BY_ZERO);
+        }
+        return y.divide(x, calc_mc);
+    }
+
+    /**
+     * Converts the result of a double-precision function, rounding it to the
+     * calculation precision. A double only holds about 16 significant digits;
+     * the rest of its binary expansion would show as made-up digits.
+     */
+    private BigDecimal fromDouble(double d) throws NumberFormatException {
+        return new BigDecimal(d, double_mc);
+    }
+
+    /**
+     * Computes the nth root of y to the calculation precision, using Newton's
+     * method.
+     */
+    private BigDecimal root(BigDecimal y, int n) throws ArithmeticException {
+        if (y.signum() == 0) {
+            return BigDecimal.ZERO;
+        }
+        if (y.signum() < 0) {
+            if ((n & 1) == 0) {
+                throw new ArithmeticException(ERR_NEG_ROOT);
+            }
+            return root(y.negate(), n).negate();
+        }
+
+        // start from a double-precision estimate, scaled so that it can't
+        // overflow.
+        double lg = (unscaledLog10(y) - y.scale()) / n;
+        int exp = (int) Math.floor(lg);
+        BigDecimal r = new BigDecimal(Math.pow(10, lg - exp)).scaleByPowerOfTen(exp);
+
+        MathContext mc = new MathContext(calc_mc.getPrecision() + 4);
+        BigDecimal bn = new BigDecimal(n);
+        BigDecimal bn1 = new BigDecimal(n - 1);
+        for (int i = 0; i < 100; i++) {
+            BigDecimal next = r.multiply(bn1).add(y.divide(r.pow(n - 1, mc), mc)).divide(bn, mc);
+            if (next.round(calc_mc).equals(r.round(calc_mc))) {
+                r = next;
+                break;
+            }
+            r = next;
+            checkDeadline();
+        }
+        return r.round(calc_mc);
+    }
+
+    /**
+     * Computes x!, rounding each product to mc. Only the exact product is
+     * checked against the deadline; the rounded products stay small.
+     */
+    private BigDecimal factorial(BigDecimal x, MathContext mc) throws ArithmeticException {
+        long i = x.intValueExact() - 1;
+        while (i > 0) {
+            if (mc.getPrecision() == 0) {
+                x = x.multiply(new BigDecimal(i--));
+                checkDeadline();
+            } else {
+                x = x.multiply(new BigDecimal(i--), mc);
+            }
+        }
+        return x;
+    }
+
+    /**
+     * Computes y^x. If x is a positive integer, the result is exact; if it is
+     * a negative integer, the result is rounded to the calculation precision;
+     * otherwise Math.pow is used. Large integer powers are deferred in lazy
+     * mode.
+     */
+    private Number power(final BigDecimal y, BigDecimal x) throws ArithmeticException {
+        if (x.scale() > 0) {
+            return fromDouble(Math.pow(y.doubleValue(), x.doubleValue()));
+        }
+
+        int n = x.intValueExact();
+        // a negative power is the inverse of the positive one.
+        final boolean invert = (n < 0);
+        if (invert) {
+            n = Math.negateExact(n);
+        }
+        final int count = n;
+        final double digits = Math.floor(n * unscaledLog10(y)) + 1;
+        requireDigits(digits);
+        final int scale = Math.multiplyExact(y.scale(), n);
+        if (digits - scale > Integer.MAX_VALUE) {
+            // the exponent of the result can't be represented.
+            throw new ArithmeticException(ERR_OVERFLOW);
+        }
+        if (lazy && !invert && (digits > LAZY_DIGITS)) {
+            return new RPNDeferred() {
+                protected BigDecimal compute() {
+                    return new BigDecimal(powInteger(y.unscaledValue(), count), scale);
+                }
+
+                protected BigDecimal approximate(MathContext mc) {
+                    // each squaring doubles the relative error, so
+                    // log10(count) guard digits cover the rounding.
+                    return powRounded(y, count, new MathContext(mc.getPrecision() + 2 + (int) Math.log10(count)));
+                }
+            };
+        }
+        BigDecimal result = new BigDecimal(powInteger(y.unscaledValue(), n), scale);
+        return invert ? divide(BigDecimal.ONE, result) : result;
+    }
+
+    /**
+     * Computes b^n by square-and-multiply, rounding each product to mc. Unlike
+     * BigDecimal.pow(int, MathContext), this accepts any int exponent.
+     */
+    private BigDecimal powRounded(BigDecimal b, int n, MathContext mc) {
+        BigDecimal result = BigDecimal.ONE;
+        while (n > 0) {
+            if ((n & 1) != 0) {
+                result = result.multiply(b, mc);
+            }
+            n >>>= 1;
+            if (n > 0) {
+                b = b.multiply(b, mc);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes y^n exactly, for an integer n; negative powers invert y.
+     */
+    private RPNRational power(RPNRational y, int n) throws ArithmeticException {
+        y = y.reduce();
+        if (n < 0) {
+            y = y.invert();
+            n = Math.negateExact(n);
+        }
+        requireDigits(Math.floor(n * sizeLog10(y)) + 1);
+        return new RPNRational(powInteger(y.getNumerator(), n), powInteger(y.getDenominator(), n));
+    }
+
+    /**
+     * Computes b^n by square-and-multiply, so the deadline can be checked
+     * between steps; the steps with huge operands are spread over several
+     * threads.
+     */
+    private BigInteger powInteger(BigInteger b, int n) throws ArithmeticException {
+        BigInteger result = BigInteger.ONE;
+        while (n > 0) {
+            if ((n & 1) != 0) {
+                result = RPNBigMath.multiply(result, b);
+            }
+            n >>>= 1;
+            if (n > 0) {
+                b = RPNBigMath.multiply(b, b);
+            }
+            checkDeadline();
+        }
+        return result;
+    }
+
+    /**
+     * Returns log10 of the size of a stack entry: of the unscaled value of a
+     * decimal, or of the numerator and denominator of a rational.
+     */
+    private double sizeLog10(Number v) {
+        if (v instanceof RPNRational) {
+            return ((RPNRational) v).bitLength() * LOG10_2;
+        }
+        return unscaledLog10((BigDecimal) v);
+    }
+
+    /**
+     * Returns log10 of the unscaled value of v, used to estimate the number of
+     * digits in a result before computing it.
+     */
+    private double unscaledLog10(BigDecimal v) {
+        BigInteger u = v.unscaledValue().abs();
+        if (u.signum() == 0) {
+            return 0;
+        }
+        int shift = Math.max(0, u.bitLength() - 62);
+        return Math.log10(u.shiftRight(shift).doubleValue()) + shift * LOG10_2;
+    }
+
+    /**
+     * Estimates the number of digits in n!, using Stirling's approximation.
+     */
+    private double factorialDigits(long n) {
+        if (n < 2) {
+            return 1;
+        }
+        return Math.floor(n * Math.log10(n / Math.E) + 0.5 * Math.log10(2 * Math.PI * n)) + 1;
+    }
+
+    // ------------------------------------------------------------------------
+    // RESOURCE LIMITS
+    // ------------------------------------------------------------------------
+    /**
+     * Sets the maximum number of digits that a MULT, POW or FACT result may
+     * have. The size of the result is estimated before it is computed.
+     * @param digits the digit limit, or 0 for no limit.
+     */
+    public void setMaxDigits(int digits) {
+        max_digits = Math.max(0, digits);
+    }
+
+    public int getMaxDigits() {
+        return max_digits;
+    }
+
+    /**
+     * Sets the maximum number of elements that the stack may hold.
+     * @param height the height limit, or 0 for no limit.
+     */
+    public void setMaxStackHeight(int height) {
+        max_stack = Math.max(0, height);
+    }
+
+    public int getMaxStackHeight() {
+        return max_stack;
+    }
+
+    /**
+     * Sets the wall-clock time that a single operation may take. The deadline
+     * is checked between the steps of long-running operations (FACT, integer
+     * POW), so a single very large multiplication can overrun it.
+     * @param millis the time limit in milliseconds, or 0 for no limit.
+     */
+    public void setOperationTimeout(long millis) {
+        op_timeout = Math.max(0, millis);
+    }
+
+    public long getOperationTimeout() {
+        return op_timeout;
+    }
+
+    // ------------------------------------------------------------------------
+    // STATISTICS
+    // ------------------------------------------------------------------------
+    /**
+     * Adds a value to the statistics accumulator without putting it on the
+     * stack.
+     */
+    public void accumulate(BigDecimal val) {
+        stats.add(val);
+    }
+
+    /**
+     * Adds the value of a register to the statistics accumulator instead of
+     * pushing it, for an rcl:name or grcl:name command.
+     * @return true if val is a recall command; false otherwise.
+     */
+    public boolean accumulateRegister(String val) throws ArithmeticException {
+        int colon = val.indexOf(':');
+        if ((colon < 0) || (colon == val.length() - 1)) {
+            return false;
+        }
+
+        String cmd = val.substring(0, colon);
+        String name = val.substring(colon + 1);
+        if (cmd.equals("rcl")) {
+            stats.add(toDecimal(registerValue(registers, name)));
+        } else if (cmd.equals("grcl")) {
+            stats.add(toDecimal(registerValue(global_registers, name)));
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get the statistics accumulator, for example to merge it with the
+     * accumulator of a calculator that ran in another thread.
+     */
+    public RPNStats getStats() {
+        return stats;
+    }
+
+    // ------------------------------------------------------------------------
+    // RANDOM NUMBERS
+    // ------------------------------------------------------------------------
+    /**
+     * Seeds the random number generator, so that RAND and RANDN produce a
+     * repeatable sequence.
+     */
+    public void setSeed(long seed) {
+        rng = new SplittableRandom(seed);
+    }
+
+    /**
+     * Returns a random number between 0 and 1, with as many digits as the
+     * calculation precision (up to 18). The digits are drawn directly, so no
+     * conversion from double is needed.
+     */
+    private BigDecimal randomValue() {
+        final int digits = Math.min(calc_mc.getPrecision(), RAND_DIGITS);
+        return BigDecimal.valueOf(rng.nextLong(POW10[digits]), digits);
+    }
+
+    /**
+     * Replaces the random number generator; for example, with one returned
+     * by another calculator's splitRandom().
+     */
+    public void setRandom(SplittableRandom random) {
+        rng = random;
+    }
+
+    /**
+     * Splits off a new generator for use by another thread or calculator.
+     * The generators split off a seeded generator, in the same order, always
+     * produce the same sequences.
+     */
+    public SplittableRandom splitRandom() {
+        return rng.split();
+    }
+
+    // ------------------------------------------------------------------------
+    // PRECISION
+    // ------------------------------------------------------------------------
+    /**
+     * Sets the number of significant digits kept by division, roots and the
+     * transcendental functions. Transcendental functions are evaluated in
+     * double precision, so their results never have more than 16 digits.
+     * @param digits the precision; must be at least 1.
+     */
+    public void setPrecision(int digits) {
+        if (digits < 1) {
+            throw new IllegalArgumentException("Precision must be at least 1.");
+        }
+        calc_mc = new MathContext(digits, RoundingMode.HALF_EVEN);
+        double_mc = new MathContext(Math.min(digits, 16), RoundingMode.HALF_EVEN);
+        stats.setMathContext(calc_mc);
+    }
+
+    public int getPrecision() {
+        return calc_mc.getPrecision();
+    }
+
+    /**
+     * Sets the number of significant digits that stack entries are rounded
+     * to by getStackEntry().
+     * @param digits the precision; must be at least 1.
+     */
+    public void setDisplayPrecision(int digits) {
+        if (digits < 1) {
+            throw new IllegalArgumentException("Precision must be at least 1.");
+        }
+        disp_prec = digits;
+        disp_mc = new MathContext(digits, RoundingMode.HALF_EVEN);
+        disp_changed = true;
+        fireChanges();
+    }
+
+    public int getDisplayPrecision() {
+        return disp_prec;
     }
 
     // ------------------------------------------------------------------------
@@ -593,7 +1346,19 @@ public class RPNCalc {
             return null;
         }
 
-        BigDecimal val = rpnstack.elementAt(i).round(MathContext.DECIMAL64);
+        BigDecimal val;
+        Number entry = rpnstack.elementAt(i);
+        if (entry instanceof RPNDeferred) {
+            // only the displayed digits are computed.
+            val = ((RPNDeferred) entry).round(disp_mc);
+        } else if (entry instanceof RPNRational) {
+            // keep the reduced form, so that it isn't reduced again.
+            RPNRational r = ((RPNRational) entry).reduce();
+            rpnstack.setElementAt(r, i);
+            val = r.toBigDecimal(disp_mc).round(disp_mc);
+        } else {
+            val = ((BigDecimal) entry).round(disp_mc);
+        }
         int scale = val.scale();
         int digits = val.precision();
 
@@ -615,6 +1380,69 @@ public class RPNCalc {
         }
     }
 
+    /**
+     * Get a stack entry as it is stored: a BigDecimal, or an RPNRational if
+     * it was computed in exact mode. A deferred entry is computed first.
+     */
+    public Number getStackValue(int i) {
+        return forceEntry(i);
+    }
+
+    /**
+     * Selects exact rational arithmetic for ADD, SUBT, MULT, DIV, INV, NEG,
+     * ABS, MAX, MIN and integer POW. Other operations, and pop() and peek(),
+     * still see decimals.
+     */
+    public void setExact(boolean exact) {
+        this.exact = exact;
+    }
+
+    public boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * Selects lazy evaluation. In lazy mode, FACT, POW and EXP results of
+     * more than LAZY_DIGITS digits are pushed as deferred entries: the exact
+     * value is only computed when an operation, pop() or peek() uses it, and
+     * getStackEntry() computes just the digits it displays. Entries that are
+     * dropped or cleared before they are used are never computed.
+     *
+     * Resource limits are checked when the entry is pushed; the timeout
+     * applies when it is computed.
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * Get this calculator's local registers.
+     */
+    public RPNRegisters getRegisters() {
+        return registers;
+    }
+
+    /**
+     * Sets the store used for global registers. By default, all calculators
+     * share RPNRegisters.getGlobal(); calculators can be given a store of
+     * their own to share within a group, such as the workers of one batch.
+     */
+    public void setGlobalRegisters(RPNRegisters global_registers) {
+        this.global_registers = global_registers;
+    }
+
+    public RPNRegisters getGlobalRegisters() {
+        return global_registers;
+    }
+
+    public DispMode getDisplayMode() {
+        return disp_mode;
+    }
+
     public Stack getStack() {
         return rpnstack;
     }
@@ -627,7 +1455,13 @@ public class RPNCalc {
         String output = "";
         // print the stack, from the last element to the first
         for (int idx = 0; idx < rpnstack.size(); idx++) {
-            output += new String((rpnstack.size() - idx) + ": " + rpnstack.elementAt(idx) + "\n");
+            // deferred entries are shown as they are displayed, rather than
+            // computed in full.
+            Object val = rpnstack.elementAt(idx);
+            if (val instanceof RPNDeferred) {
+                val = getStackEntry(idx);
+            }
+            output += new String((rpnstack.size() - idx) + ": " + val + "\n");
         }
 
         return output;
@@ -645,8 +1479,26 @@ public class RPNCalc {
         }
     }
 
-    private boolean peekInteger() {
-        return (peek().scale() <= 0);
+    private void requireRoom(int i) throws LimitException {
+        if ((max_stack > 0) && (rpnstack.size() + i > max_stack)) {
+            throw new LimitException(ERR_LIMIT_STACK);
+        }
+    }
+
+    private void requireDigits(double digits) throws LimitException {
+        if ((max_digits > 0) && (digits > max_digits)) {
+            throw new LimitException(ERR_LIMIT_DIGITS);
+        }
+    }
+
+    private void startDeadline() {
+        op_deadline = (op_timeout > 0) ? System.nanoTime() + op_timeout * 1000000L : 0;
+    }
+
+    private void checkDeadline() throws LimitException {
+        if ((op_deadline != 0) && (System.nanoTime() - op_deadline > 0)) {
+            throw new LimitException(ERR_LIMIT_TIME);
+        }
     }
 }
 
@@ -0,0 +1,201 @@
+//  NeRPN: A minimalistic RPN Calculator in Java.
+//  Copyright © 2007-2019 Eron J. Hennessey
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+package abstrys.NeRPN;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The text commands and named constants understood by RPNCalc, shared by
+ * every calculator.
+ *
+ * The table is built once, into a trie over the characters that appear in
+ * the names. A lookup walks the trie one character at a time, so tokens can
+ * be matched from a String or straight from bytes, without hashing and
+ * without collisions.
+ */
+final class RPNCommands {
+
+    private static final int ASCII = 128;
+
+    private static final byte[] char_class = new byte[ASCII]; // 0: not in any name.
+    private static final int class_count;
+    private static final int[] next; // state * class_count + class -> state.
+    private static final Object[] values; // the Ops or BigDecimal for each state.
+
+    static {
+        LinkedHashMap<String, Object> table = new LinkedHashMap<String, Object>();
+        table.put("!", RPNCalc.Ops.FACT);
+        table.put("%", RPNCalc.Ops.MOD);
+        table.put("*", RPNCalc.Ops.MULT);
+        table.put("+", RPNCalc.Ops.ADD);
+        table.put("-", RPNCalc.Ops.SUBT);
+        table.put("/", RPNCalc.Ops.DIV);
+        table.put("^", RPNCalc.Ops.POW);
+        table.put("abs", RPNCalc.Ops.ABS);
+        table.put("acos", RPNCalc.Ops.ACOS);
+        table.put("approx", RPNCalc.Ops.APPROX);
+        table.put("asin", RPNCalc.Ops.ASIN);
+        table.put("atan", RPNCalc.Ops.ATAN);
+        table.put("c", RPNCalc.Ops.CLEAR);
+        table.put("cbrt", RPNCalc.Ops.CBRT);
+        table.put("ceil", RPNCalc.Ops.CEIL);
+        table.put("cos", RPNCalc.Ops.COS);
+        table.put("cosh", RPNCalc.Ops.COSH);
+        table.put("deg", RPNCalc.Ops.DEG);
+        table.put("del", RPNCalc.Ops.DELETE);
+        table.put("dup", RPNCalc.Ops.DUP);
+        table.put("e", RPNCalc.Ops.E);
+        table.put("en1", RPNCalc.Ops.EN1);
+        table.put("eng", RPNCalc.Ops.ENG);
+        table.put("exact", RPNCalc.Ops.EXACT);
+        table.put("exp", RPNCalc.Ops.EXP);
+        table.put("expn1", RPNCalc.Ops.EXPN1);
+        table.put("fix", RPNCalc.Ops.FIX);
+        table.put("floor", RPNCalc.Ops.FLOOR);
+        table.put("hyp", RPNCalc.Ops.HYP);
+        table.put("inv", RPNCalc.Ops.INV);
+        table.put("ln", RPNCalc.Ops.LN);
+        table.put("log", RPNCalc.Ops.LOG);
+        table.put("max", RPNCalc.Ops.MAX);
+        table.put("min", RPNCalc.Ops.MIN);
+        table.put("neg", RPNCalc.Ops.NEG);
+        table.put("pow", RPNCalc.Ops.POW);
+        table.put("rad", RPNCalc.Ops.RAD);
+        table.put("rand", RPNCalc.Ops.RAND);
+        table.put("randn", RPNCalc.Ops.RANDN);
+        table.put("root", RPNCalc.Ops.ROOT);
+        table.put("rot", RPNCalc.Ops.ROT);
+        table.put("sadd", RPNCalc.Ops.SADD);
+        table.put("sci", RPNCalc.Ops.SCI);
+        table.put("sclr", RPNCalc.Ops.SCLR);
+        table.put("sin", RPNCalc.Ops.SIN);
+        table.put("sinh", RPNCalc.Ops.SINH);
+        table.put("smax", RPNCalc.Ops.SMAX);
+        table.put("smean", RPNCalc.Ops.SMEAN);
+        table.put("smin", RPNCalc.Ops.SMIN);
+        table.put("sn", RPNCalc.Ops.SN);
+        table.put("sqrt", RPNCalc.Ops.SQRT);
+        table.put("ssdev", RPNCalc.Ops.SSDEV);
+        table.put("ssum", RPNCalc.Ops.SSUM);
+        table.put("std", RPNCalc.Ops.STD);
+        table.put("svar", RPNCalc.Ops.SVAR);
+        table.put("swap", RPNCalc.Ops.SWAP);
+        table.put("tan", RPNCalc.Ops.TAN);
+        table.put("tanh", RPNCalc.Ops.TANH);
+
+        table.put("E", new BigDecimal(Math.E));
+        table.put("PI", new BigDecimal(Math.PI));
+
+        // number the characters that are used, so that each state only needs
+        // a transition for each of them.
+        int classes = 1;
+        for (String name : table.keySet()) {
+            for (int i = 0; i < name.length(); i++) {
+                final char c = name.charAt(i);
+                if (char_class[c] == 0) {
+                    char_class[c] = (byte) classes++;
+                }
+            }
+        }
+        class_count = classes;
+
+        ArrayList<int[]> states = new ArrayList<int[]>();
+        ArrayList<Object> state_values = new ArrayList<Object>();
+        states.add(new int[class_count]);
+        state_values.add(null);
+        for (Map.Entry<String, Object> entry : table.entrySet()) {
+            final String name = entry.getKey();
+            int state = 0;
+            for (int i = 0; i < name.length(); i++) {
+                final int c = char_class[name.charAt(i)];
+                int n = states.get(state)[c];
+                if (n == 0) {
+                    n = states.size();
+                    states.get(state)[c] = n;
+                    states.add(new int[class_count]);
+                    state_values.add(null);
+                }
+                state = n;
+            }
+            state_values.set(state, entry.getValue());
+        }
+
+        next = new int[states.size() * class_count];
+        for (int i = 0; i < states.size(); i++) {
+            System.arraycopy(states.get(i), 0, next, i * class_count, class_count);
+        }
+        values = state_values.toArray();
+    }
+
+    private RPNCommands() {
+    }
+
+    /**
+     * Looks up a command or constant by name.
+     * @return the matching Ops or BigDecimal, or null if there's no match.
+     */
+    static Object lookup(CharSequence name) {
+        int state = 0;
+        for (int i = 0; i < name.length(); i++) {
+            state = step(state, name.charAt(i));
+            if (state == 0) {
+                return null;
+            }
+        }
+        return values[state];
+    }
+
+    /**
+     * Looks up a command or constant by name, from the bytes between start
+     * and end of a buffer.
+     * @return the matching Ops or BigDecimal, or null if there's no match.
+     */
+    static Object lookup(ByteBuffer buf, int start, int end) {
+        int state = 0;
+        for (int i = start; i < end; i++) {
+            state = step(state, buf.get(i));
+            if (state == 0) {
+                return null;
+            }
+        }
+        return values[state];
+    }
+
+    static RPNCalc.Ops getOp(CharSequence name) {
+        Object value = lookup(name);
+        return (value instanceof RPNCalc.Ops) ? (RPNCalc.Ops) value : null;
+    }
+
+    static BigDecimal getConstant(CharSequence name) {
+        Object value = lookup(name);
+        return (value instanceof BigDecimal) ? (BigDecimal) value : null;
+    }
+
+    /**
+     * Follows the transition for character c from a state.
+     * @return the next state, or 0 if there is none.
+     */
+    private static int step(int state, int c) {
+        if ((c < 0) || (c >= ASCII) || (char_class[c] == 0)) {
+            return 0;
+        }
+        return next[state * class_count + char_class[c]];
+    }
+}
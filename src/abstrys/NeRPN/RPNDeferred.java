@@ -0,0 +1,100 @@
+//  NeRPN: A minimalistic RPN Calculator in Java.
+//  Copyright © 2007-2019 Eron J. Hennessey
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+package abstrys.NeRPN;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * A stack entry whose value hasn't been computed yet. RPNCalc pushes these
+ * for expensive results in lazy mode: the exact value is computed the first
+ * time an operation consumes the entry, and the display only asks for a
+ * rounded approximation, which is much cheaper. An entry that is dropped
+ * before it is used costs nothing.
+ *
+ * Both values are cached once computed.
+ */
+abstract class RPNDeferred extends Number {
+
+    private BigDecimal value;
+    private BigDecimal approx;
+    private int approx_prec; // the precision approx was computed to.
+
+    /**
+     * Computes the exact value.
+     */
+    protected abstract BigDecimal compute() throws ArithmeticException;
+
+    /**
+     * Computes the value to at least the precision of mc.
+     */
+    protected abstract BigDecimal approximate(MathContext mc) throws ArithmeticException;
+
+    /**
+     * Get the exact value, computing it if it hasn't been already.
+     */
+    public BigDecimal force() throws ArithmeticException {
+        if (value == null) {
+            value = compute();
+            approx = null;
+        }
+        return value;
+    }
+
+    public boolean isForced() {
+        return value != null;
+    }
+
+    /**
+     * Get the value rounded to mc, without computing the exact value if it
+     * hasn't been already.
+     */
+    public BigDecimal round(MathContext mc) throws ArithmeticException {
+        if (value != null) {
+            return value.round(mc);
+        }
+        if ((approx == null) || (approx_prec < mc.getPrecision())) {
+            approx = approximate(mc).round(mc);
+            approx_prec = mc.getPrecision();
+        }
+        return approx.round(mc);
+    }
+
+    @Override
+    public int intValue() {
+        return force().intValue();
+    }
+
+    @Override
+    public long longValue() {
+        return force().longValue();
+    }
+
+    @Override
+    public float floatValue() {
+        return force().floatValue();
+    }
+
+    @Override
+    public double doubleValue() {
+        return force().doubleValue();
+    }
+
+    @Override
+    public String toString() {
+        return force().toString();
+    }
+}
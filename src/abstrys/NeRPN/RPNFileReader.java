@@ -0,0 +1,237 @@
+//  NeRPN: A minimalistic RPN Calculator in Java.
+//  Copyright © 2007-2019 Eron J. Hennessey
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+package abstrys.NeRPN;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Feeds whitespace-separated RPN tokens from a file into an RPNCalc.
+ *
+ * The file is memory-mapped and tokens are scanned directly from the mapped
+ * bytes. Commands and constants are matched byte by byte through the
+ * RPNCommands trie, and decimal literals of up to 18 digits are parsed
+ * straight into an unscaled value and a scale, so that the common path
+ * creates no Strings.
+ */
+public class RPNFileReader {
+
+    // size of the window of the file that is mapped at one time.
+    private final long WINDOW_SIZE = 1L << 28;
+    private final long MAX_UNSCALED = (Long.MAX_VALUE - 9) / 10;
+
+    private RPNCalc calc;
+    private long position = 0; // file offset of the current token.
+    private long token_count = 0;
+    private boolean accumulate = false;
+
+    public RPNFileReader(RPNCalc calc) {
+        this.calc = calc;
+    }
+
+    /**
+     * Reads a file, passing each of its tokens to the calculator.
+     * @param path the file to read.
+     * @throws NumberFormatException if a token isn't a command, constant or
+     * number.
+     * @throws ArithmeticException if an operation fails; getPosition()
+     * returns the offset of the failed token.
+     */
+    public void read(Path path) throws IOException {
+        // report the whole file to stack listeners as a single change.
+        calc.beginUpdate();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            long pos = 0;
+            while (pos < size) {
+                final int len = (int) Math.min(WINDOW_SIZE, size - pos);
+                final boolean eof = (pos + len == size);
+                MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, pos, len);
+
+                // a token that runs off the end of the window is read again
+                // at the start of the next one.
+                int done = scan(buf, 0, len, eof, pos);
+                if (done == 0) {
+                    throw new IOException("Token too long at byte " + pos + ".");
+                }
+                pos += done;
+            }
+        } finally {
+            calc.endUpdate();
+        }
+    }
+
+    /**
+     * Reads the tokens between the position and the limit of a buffer. The
+     * buffer's position is not changed.
+     */
+    public void read(ByteBuffer buf) {
+        calc.beginUpdate();
+        try {
+            scan(buf, buf.position(), buf.limit(), true, buf.position());
+        } finally {
+            calc.endUpdate();
+        }
+    }
+
+    /**
+     * Selects whether numbers are pushed onto the stack (the default) or added
+     * straight to the calculator's statistics accumulator. Literals,
+     * constants and recalled registers are all accumulated; other commands
+     * still work on the stack. Accumulating lets a file of any size be
+     * summarized without holding its values.
+     */
+    public void setAccumulate(boolean accumulate) {
+        this.accumulate = accumulate;
+    }
+
+    /**
+     * Get the offset of the last token that was read.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Get the number of tokens that have been read.
+     */
+    public long getTokenCount() {
+        return token_count;
+    }
+
+    /**
+     * Scans the tokens in buf between start and end.
+     * @return the index at which scanning stopped: end, or the start of an
+     * incomplete token if eof is false.
+     */
+    private int scan(ByteBuffer buf, int start, int end, boolean eof, long base) {
+        int i = start;
+        while (true) {
+            while ((i < end) && isSpace(buf.get(i))) {
+                i++;
+            }
+            if (i >= end) {
+                return end;
+            }
+
+            final int token_start = i;
+            while ((i < end) && !isSpace(buf.get(i))) {
+                i++;
+            }
+            if ((i >= end) && !eof) {
+                return token_start;
+            }
+
+            position = base + (token_start - start);
+            dispatch(buf, token_start, i);
+            token_count++;
+        }
+    }
+
+    private void dispatch(ByteBuffer buf, int start, int end) {
+        Object value = RPNCommands.lookup(buf, start, end);
+        if (value instanceof RPNCalc.Ops) {
+            calc.doOperation((RPNCalc.Ops) value);
+        } else if (value instanceof BigDecimal) {
+            if (accumulate) {
+                calc.accumulate((BigDecimal) value);
+            } else {
+                calc.push((BigDecimal) value);
+            }
+        } else if (isLetter(buf.get(start))) {
+            // numbers never start with a letter; try a register command.
+            String text = tokenText(buf, start, end);
+            if (!(accumulate && calc.accumulateRegister(text)) && !calc.pushRegisterOp(text)) {
+                throw new NumberFormatException(
+                    "\"" + text + "\" is not a valid value.");
+            }
+        } else if (accumulate) {
+            calc.accumulate(parseNumber(buf, start, end));
+        } else {
+            calc.push(parseNumber(buf, start, end));
+        }
+    }
+
+    /**
+     * Parses a decimal literal. Plain literals that fit in a long are parsed
+     * directly; anything else (exponents, very long literals) is handed to
+     * BigDecimal's String constructor.
+     */
+    private BigDecimal parseNumber(ByteBuffer buf, int start, int end) throws NumberFormatException {
+        int i = start;
+        boolean negative = false;
+        byte b = buf.get(i);
+        if ((b == '-') || (b == '+')) {
+            negative = (b == '-');
+            i++;
+        }
+
+        long unscaled = 0;
+        int scale = 0;
+        boolean seen_digit = false;
+        boolean seen_point = false;
+        for (; i < end; i++) {
+            b = buf.get(i);
+            if ((b >= '0') && (b <= '9') && (unscaled <= MAX_UNSCALED)) {
+                unscaled = unscaled * 10 + (b - '0');
+                seen_digit = true;
+                if (seen_point) {
+                    scale++;
+                }
+            } else if ((b == '.') && !seen_point) {
+                seen_point = true;
+            } else {
+                return parseNumberText(buf, start, end);
+            }
+        }
+        if (!seen_digit) {
+            return parseNumberText(buf, start, end);
+        }
+        return BigDecimal.valueOf(negative ? -unscaled : unscaled, scale);
+    }
+
+    private BigDecimal parseNumberText(ByteBuffer buf, int start, int end) throws NumberFormatException {
+        String text = tokenText(buf, start, end);
+        try {
+            return new BigDecimal(text);
+        } catch (NumberFormatException e) {
+            throw new NumberFormatException(
+                "\"" + text + "\" is not a valid value.");
+        }
+    }
+
+    private static String tokenText(ByteBuffer buf, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buf.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private static boolean isLetter(byte b) {
+        return ((b >= 'a') && (b <= 'z')) || ((b >= 'A') && (b <= 'Z'));
+    }
+
+    private static boolean isSpace(byte b) {
+        return (b == ' ') || (b == '\n') || (b == '\t') || (b == '\r') || (b == '\f');
+    }
+}
@@ -0,0 +1,239 @@
+//  NeRPN: A minimalistic RPN Calculator in Java.
+//  Copyright © 2007-2019 Eron J. Hennessey
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+package abstrys.NeRPN;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+/**
+ * An exact rational number: a BigInteger numerator and a positive BigInteger
+ * denominator.
+ *
+ * Reducing to lowest terms needs a GCD, which is costly for large values, so
+ * the arithmetic methods don't do it every time. A result is only reduced
+ * once its size passes REDUCE_BITS and has doubled since it was last reduced,
+ * or when it is converted to a decimal. The value is the same either way.
+ */
+public final class RPNRational extends Number implements Comparable<RPNRational> {
+
+    // results smaller than this, in bits, are never reduced automatically.
+    static final int REDUCE_BITS = 512;
+
+    public static final RPNRational ZERO = new RPNRational(BigInteger.ZERO, BigInteger.ONE);
+    public static final RPNRational ONE = new RPNRational(BigInteger.ONE, BigInteger.ONE);
+
+    private static final String ERR_DIV_BY_ZERO = "Division by zero.";
+
+    private final BigInteger num;
+    private final BigInteger den;
+    // size of the operands when they were last reduced (or created), which
+    // normalize() compares the current size against.
+    private final int reduced_bits;
+    private final boolean reduced; // true if in lowest terms.
+
+    public RPNRational(BigInteger num, BigInteger den) throws ArithmeticException {
+        this(num, den, num.bitLength() + den.bitLength(), false);
+    }
+
+    private RPNRational(BigInteger num, BigInteger den, int reduced_bits, boolean reduced) throws ArithmeticException {
+        if (den.signum() == 0) {
+            throw new ArithmeticException(ERR_DIV_BY_ZERO);
+        }
+        if (den.signum() < 0) {
+            num = num.negate();
+            den = den.negate();
+        }
+        this.num = num;
+        this.den = den;
+        this.reduced_bits = reduced_bits;
+        this.reduced = reduced;
+    }
+
+    /**
+     * Converts a decimal to a rational, exactly.
+     */
+    public static RPNRational valueOf(BigDecimal d) {
+        if (d.scale() > 0) {
+            return new RPNRational(d.unscaledValue(), BigInteger.TEN.pow(d.scale()));
+        }
+        return new RPNRational(d.unscaledValue().multiply(BigInteger.TEN.pow(-d.scale())), BigInteger.ONE);
+    }
+
+    /**
+     * Converts any of the numbers held on an RPNCalc stack to a rational.
+     */
+    public static RPNRational valueOf(Number n) {
+        if (n instanceof RPNRational) {
+            return (RPNRational) n;
+        }
+        if (n instanceof BigDecimal) {
+            return valueOf((BigDecimal) n);
+        }
+        return valueOf(new BigDecimal(n.toString()));
+    }
+
+    public BigInteger getNumerator() {
+        return num;
+    }
+
+    public BigInteger getDenominator() {
+        return den;
+    }
+
+    /**
+     * Get the combined size of the numerator and denominator, in bits.
+     */
+    public int bitLength() {
+        return num.bitLength() + den.bitLength();
+    }
+
+    // results carry the larger operand's reduced size, so that a chain of
+    // operations is only reduced once it has doubled in size.
+    public RPNRational add(RPNRational o) {
+        final int bits = Math.max(reduced_bits, o.reduced_bits);
+        if (den.equals(o.den)) {
+            return new RPNRational(num.add(o.num), den, bits, false).normalize();
+        }
+        return new RPNRational(
+            RPNBigMath.multiply(num, o.den).add(RPNBigMath.multiply(o.num, den)),
+            RPNBigMath.multiply(den, o.den), bits, false).normalize();
+    }
+
+    public RPNRational subtract(RPNRational o) {
+        return add(o.negate());
+    }
+
+    public RPNRational multiply(RPNRational o) {
+        return new RPNRational(RPNBigMath.multiply(num, o.num),
+            RPNBigMath.multiply(den, o.den), Math.max(reduced_bits, o.reduced_bits), false).normalize();
+    }
+
+    public RPNRational divide(RPNRational o) throws ArithmeticException {
+        return multiply(o.invert());
+    }
+
+    public RPNRational invert() throws ArithmeticException {
+        return new RPNRational(den, num, reduced_bits, reduced);
+    }
+
+    public RPNRational negate() {
+        return new RPNRational(num.negate(), den, reduced_bits, reduced);
+    }
+
+    public RPNRational abs() {
+        return (num.signum() < 0) ? negate() : this;
+    }
+
+    public int signum() {
+        return num.signum();
+    }
+
+    public RPNRational max(RPNRational o) {
+        return (compareTo(o) >= 0) ? this : o;
+    }
+
+    public RPNRational min(RPNRational o) {
+        return (compareTo(o) <= 0) ? this : o;
+    }
+
+    /**
+     * Reduces the fraction to its lowest terms.
+     */
+    public RPNRational reduce() {
+        if (reduced) {
+            return this;
+        }
+        BigInteger g = num.gcd(den);
+        BigInteger n = num;
+        BigInteger d = den;
+        if (!g.equals(BigInteger.ONE)) {
+            n = num.divide(g);
+            d = den.divide(g);
+        }
+        return new RPNRational(n, d, n.bitLength() + d.bitLength(), true);
+    }
+
+    /**
+     * Reduces the fraction if it has grown enough since it was last reduced.
+     */
+    RPNRational normalize() {
+        if (bitLength() > Math.max(REDUCE_BITS, 2L * reduced_bits)) {
+            return reduce();
+        }
+        return this;
+    }
+
+    /**
+     * Converts the value to a decimal. Integers are converted exactly; other
+     * values are rounded to the given precision.
+     */
+    public BigDecimal toBigDecimal(MathContext mc) {
+        RPNRational r = reduce();
+        if (r.den.equals(BigInteger.ONE)) {
+            return new BigDecimal(r.num);
+        }
+        return new BigDecimal(r.num).divide(new BigDecimal(r.den), mc);
+    }
+
+    public int compareTo(RPNRational o) {
+        return num.multiply(o.den).compareTo(o.num.multiply(den));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return (o instanceof RPNRational) && (compareTo((RPNRational) o) == 0);
+    }
+
+    @Override
+    public int hashCode() {
+        RPNRational r = reduce();
+        return 31 * r.num.hashCode() + r.den.hashCode();
+    }
+
+    @Override
+    public int intValue() {
+        return num.divide(den).intValue();
+    }
+
+    @Override
+    public long longValue() {
+        return num.divide(den).longValue();
+    }
+
+    @Override
+    public float floatValue() {
+        return (float) doubleValue();
+    }
+
+    @Override
+    public double doubleValue() {
+        return toBigDecimal(MathContext.DECIMAL64).doubleValue();
+    }
+
+    /**
+     * Returns the value as "numerator/denominator", in lowest terms, or as an
+     * integer if the denominator is 1.
+     */
+    @Override
+    public String toString() {
+        RPNRational r = reduce();
+        if (r.den.equals(BigInteger.ONE)) {
+            return r.num.toString();
+        }
+        return r.num + "/" + r.den;
+    }
+}
@@ -0,0 +1,81 @@
+//  NeRPN: A minimalistic RPN Calculator in Java.
+//  Copyright © 2007-2019 Eron J. Hennessey
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+package abstrys.NeRPN;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A store of named registers, for the STO and RCL commands. Each RPNCalc has
+ * a local store of its own, and shares a global store with other
+ * calculators.
+ *
+ * The store is thread-safe, so one instance can be shared by any number of
+ * calculators on different threads (server sessions, or parallel batch
+ * workers). Reads take no locks, and writes only lock the table bin that
+ * holds the name, so writers to different registers don't wait for each
+ * other. Register values are BigDecimals or RPNRationals, which are
+ * immutable, so a recalled value can be used without copying it.
+ */
+public class RPNRegisters {
+
+    private static final RPNRegisters GLOBAL = new RPNRegisters();
+
+    private final ConcurrentHashMap<String, Number> registers = new ConcurrentHashMap<String, Number>();
+
+    /**
+     * Get the global store that calculators share unless they are given
+     * another one.
+     */
+    public static RPNRegisters getGlobal() {
+        return GLOBAL;
+    }
+
+    /**
+     * Sets a register, replacing any value it had.
+     */
+    public void store(String name, Number value) {
+        registers.put(name, value);
+    }
+
+    /**
+     * Get the value of a register.
+     * @return the value, or null if the register hasn't been set.
+     */
+    public Number recall(String name) {
+        return registers.get(name);
+    }
+
+    /**
+     * Clears a register.
+     * @return the value it had, or null if it hadn't been set.
+     */
+    public Number remove(String name) {
+        return registers.remove(name);
+    }
+
+    public void clear() {
+        registers.clear();
+    }
+
+    /**
+     * Get the names of the registers that are set. The set reflects later
+     * changes to the store.
+     */
+    public Set<String> getNames() {
+        return registers.keySet();
+    }
+}
@@ -0,0 +1,80 @@
+//  NeRPN: A minimalistic RPN Calculator in Java.
+//  Copyright © 2007-2019 Eron J. Hennessey
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+package abstrys.NeRPN;
+
+import java.util.EventObject;
+
+/**
+ * Describes a change to an RPNCalc's stack or display settings.
+ *
+ * Stack changes are reported as a range: the entries from index (counting
+ * from the bottom of the stack) to the old top were removed, and the entries
+ * from index to the new top were added in their place. Entries below index
+ * are unchanged.
+ */
+public class RPNStackEvent extends EventObject {
+
+    public enum Type {
+        PUSHED, // entries were added to the top of the stack.
+        POPPED, // entries were removed from the top of the stack.
+        REPLACED, // entries were removed and others added in their place.
+        CLEARED, // every entry was removed.
+        DISP_MODE, // the way that entries are displayed changed.
+    }
+
+    private final Type type;
+    private final int index;
+    private final int removed;
+    private final int added;
+
+    public RPNStackEvent(RPNCalc source, Type type, int index, int removed, int added) {
+        super(source);
+        this.type = type;
+        this.index = index;
+        this.removed = removed;
+        this.added = added;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Get the index of the lowest entry that changed.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Get the number of entries that were removed, starting at getIndex().
+     */
+    public int getRemoved() {
+        return removed;
+    }
+
+    /**
+     * Get the number of entries that were added, starting at getIndex().
+     */
+    public int getAdded() {
+        return added;
+    }
+
+    @Override
+    public String toString() {
+        return type + "[index=" + index + ", removed=" + removed + ", added=" + added + "]";
+    }
+}
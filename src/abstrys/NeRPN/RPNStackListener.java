@@ -0,0 +1,32 @@
+//  NeRPN: A minimalistic RPN Calculator in Java.
+//  Copyright © 2007-2019 Eron J. Hennessey
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+package abstrys.NeRPN;
+
+import java.util.EventListener;
+
+/**
+ * The interface for objects that want to know when an RPNCalc's stack
+ * changes.
+ */
+public interface RPNStackListener extends EventListener {
+
+    /**
+     * Called after the stack or display settings of a calculator change. The
+     * call is made on the thread that changed the calculator.
+     * @param e describes the change.
+     */
+    void stackChanged(RPNStackEvent e);
+}
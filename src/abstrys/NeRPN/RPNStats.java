@@ -0,0 +1,156 @@
+//  NeRPN: A minimalistic RPN Calculator in Java.
+//  Copyright © 2007-2019 Eron J. Hennessey
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+package abstrys.NeRPN;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * Accumulates summary statistics over a stream of values in constant space:
+ * the count, sum, minimum, maximum, mean and variance. The mean and variance
+ * are updated with Welford's method, so no values need to be kept.
+ *
+ * An RPNStats isn't thread-safe. Parallel workers should each fill their own
+ * accumulator, and then combine them with merge().
+ */
+public class RPNStats {
+
+    private final String ERR_NO_VALUES = "No values accumulated!";
+    private final String ERR_TOO_FEW = "At least two values must be accumulated!";
+
+    private MathContext mc;
+    private long count;
+    private BigDecimal sum;
+    private BigDecimal mean;
+    private BigDecimal m2; // the sum of squared differences from the mean.
+    private BigDecimal min;
+    private BigDecimal max;
+
+    /**
+     * @param mc the precision of the mean and variance; the sum is exact.
+     */
+    public RPNStats(MathContext mc) {
+        this.mc = mc;
+        clear();
+    }
+
+    public void setMathContext(MathContext mc) {
+        this.mc = mc;
+    }
+
+    public void clear() {
+        count = 0;
+        sum = BigDecimal.ZERO;
+        mean = BigDecimal.ZERO;
+        m2 = BigDecimal.ZERO;
+        min = null;
+        max = null;
+    }
+
+    /**
+     * Adds a value to the accumulator.
+     */
+    public void add(BigDecimal x) {
+        count++;
+        sum = sum.add(x);
+        BigDecimal delta = x.subtract(mean);
+        mean = mean.add(delta.divide(BigDecimal.valueOf(count), mc), mc);
+        m2 = m2.add(delta.multiply(x.subtract(mean), mc), mc);
+        if ((min == null) || (x.compareTo(min) < 0)) {
+            min = x;
+        }
+        if ((max == null) || (x.compareTo(max) > 0)) {
+            max = x;
+        }
+    }
+
+    /**
+     * Adds the values accumulated by another RPNStats to this one, as though
+     * they had been added here.
+     */
+    public void merge(RPNStats other) {
+        if (other.count == 0) {
+            return;
+        }
+        if (count == 0) {
+            count = other.count;
+            sum = other.sum;
+            mean = other.mean;
+            m2 = other.m2;
+            min = other.min;
+            max = other.max;
+            return;
+        }
+
+        // Chan et al.'s formulas for combining two sets of moments.
+        final BigDecimal na = BigDecimal.valueOf(count);
+        final BigDecimal nb = BigDecimal.valueOf(other.count);
+        final BigDecimal n = BigDecimal.valueOf(count + other.count);
+        BigDecimal delta = other.mean.subtract(mean);
+
+        mean = mean.add(delta.multiply(nb).divide(n, mc), mc);
+        m2 = m2.add(other.m2).add(
+            delta.multiply(delta).multiply(na.multiply(nb)).divide(n, mc), mc);
+        count += other.count;
+        sum = sum.add(other.sum);
+        min = min.min(other.min);
+        max = max.max(other.max);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public BigDecimal getSum() {
+        return sum;
+    }
+
+    public BigDecimal getMean() throws ArithmeticException {
+        requireCount(1);
+        return mean;
+    }
+
+    public BigDecimal getMin() throws ArithmeticException {
+        requireCount(1);
+        return min;
+    }
+
+    public BigDecimal getMax() throws ArithmeticException {
+        requireCount(1);
+        return max;
+    }
+
+    /**
+     * Get the sample variance of the values.
+     */
+    public BigDecimal getVariance() throws ArithmeticException {
+        requireCount(2);
+        return m2.divide(BigDecimal.valueOf(count - 1), mc);
+    }
+
+    /**
+     * Get the sample standard deviation of the values.
+     */
+    public BigDecimal getStdDev() throws ArithmeticException {
+        return getVariance().max(BigDecimal.ZERO).sqrt(mc);
+    }
+
+    private void requireCount(long n) throws ArithmeticException {
+        if (count < n) {
+            throw new ArithmeticException((n == 1) ? ERR_NO_VALUES : ERR_TOO_FEW);
+        }
+    }
+}
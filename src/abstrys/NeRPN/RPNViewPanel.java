@@ -18,17 +18,27 @@ package abstrys.NeRPN;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
+import java.math.MathContext;
 import java.util.Stack;
 import java.text.DecimalFormat;
 
 /**
  * Contains a scrollable, resizable view of a stack, consisting
  * of text elements and labels
+ *
+ * The view is a JList backed by a model that reads entries from the
+ * calculator on demand, so only the visible rows are ever formatted, no
+ * matter how deep the stack is.
  */
 public class RPNViewPanel extends JPanel {
 
     final int PANEL_SIZE = 4;
-    JPanel row_value_panel;
+    final String ROW_LABELS[] = {
+        "x", "y", "z", "w"
+    };
+    JList<String> row_list;
+    StackListModel model;
+    boolean scroll_pending = false;
     Stack stack;
     DecimalFormat format = null;
 
@@ -36,8 +46,7 @@ public class RPNViewPanel extends JPanel {
         BorderLayout layout = new BorderLayout();
         layout.setHgap(2);
         setLayout(layout);
-        add(createRowLabelPanel(), BorderLayout.WEST);
-        add(createRowValuePanel(), BorderLayout.CENTER);
+        add(createRowListPane(), BorderLayout.CENTER);
 
         // TODO: set up a number of different formats that can be selected.
         format = new DecimalFormat("0.######");
@@ -45,61 +54,212 @@ public class RPNViewPanel extends JPanel {
         setBorder(new EmptyBorder(4, 4, 2, 4));
     }
 
-    private JPanel createRowLabelPanel() {
-        final String ROW_LABELS[] = {
-            "w", "z", "y", "x"
-        };
+    private JScrollPane createRowListPane() {
+        model = new StackListModel();
+        row_list = new JList<String>(model);
+        row_list.setCellRenderer(new RowRenderer());
+        row_list.setFocusable(false);
+        row_list.setVisibleRowCount(PANEL_SIZE);
+        // a prototype value fixes the cell size, so that the list never has
+        // to measure every row.
+        updatePrototype(MathContext.DECIMAL64.getPrecision());
 
-        JPanel panel = new JPanel();
-        GridLayout layout = new GridLayout(PANEL_SIZE, 0);
-        layout.setVgap(2);
-        panel.setLayout(layout);
+        // rows that are wider than the window can be scrolled to.
+        JScrollPane pane = new JScrollPane(row_list,
+            JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED,
+            JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
+        return pane;
+    }
 
-        for (int i = 0; i < PANEL_SIZE; i++) {
-            JLabel label = new JLabel(ROW_LABELS[i]);
-            label.setHorizontalAlignment(JLabel.CENTER);
-            panel.add(label);
+    /**
+     * Sizes the rows to fit an entry with the given number of digits, in
+     * scientific notation.
+     */
+    void updatePrototype(int digits) {
+        StringBuilder prototype = new StringBuilder("-0.");
+        for (int i = 1; i < digits; i++) {
+            prototype.append('0');
         }
-        return panel;
+        prototype.append("E+0000");
+        row_list.setPrototypeCellValue(prototype.toString());
+    }
+
+    /**
+     * Updates the stack view to show the contents of the calculator's stack,
+     * and scrolls so that x is visible. After the first call, the view
+     * follows changes to the calculator's stack by itself.
+     * @param calc the RPNCalc whose stack is shown.
+     */
+    public void updateView(RPNCalc calc) {
+        model.setCalc(calc);
+        row_list.ensureIndexIsVisible(model.getSize() - 1);
+        repaint();
     }
 
-    private JPanel createRowValuePanel()
-    {
-        row_value_panel = new JPanel();
-        GridLayout layout = new GridLayout(PANEL_SIZE, 0);
-        layout.setVgap(2);
-        row_value_panel.setLayout(layout);
-
-        for (int i = 0; i < PANEL_SIZE; i++) {
-            JTextField field = new JTextField();
-            field.setEditable(false);
-            field.setHorizontalAlignment(JTextField.RIGHT);
-            if (i == (PANEL_SIZE - 1)) {
-                Font bold_font = field.getFont().deriveFont(Font.BOLD);
-                field.setFont(bold_font);
-                field.setBackground(new Color(255, 255, 204));
+    /**
+     * Scrolls x into view once the current burst of changes has been handled.
+     * Scrolling after every change would make long runs of changes slow.
+     */
+    void scrollToX() {
+        if (scroll_pending) {
+            return;
+        }
+        scroll_pending = true;
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                scroll_pending = false;
+                row_list.ensureIndexIsVisible(model.getSize() - 1);
             }
-            row_value_panel.add(field);
+        });
+    }
+
+    /**
+     * Returns the label for a row, counting up from the top of the stack.
+     */
+    String getRowLabel(int pos) {
+        if (pos < ROW_LABELS.length) {
+            return ROW_LABELS[pos];
         }
-        return row_value_panel;
+        return String.valueOf(pos + 1);
     }
 
     /**
-     * Updates the stack view using the first four elements of a
-     * passed-in Stack object.
-     * @param stack the Stack to use.
+     * A list model that reads its entries from an RPNCalc when they are asked
+     * for. The deepest entry is first, so that x is at the bottom, and there
+     * are always at least PANEL_SIZE rows; the extra rows are blank.
+     *
+     * The model listens to the calculator, and reports only the rows that
+     * each change touches.
      */
-    public void updateView(RPNCalc calc) {
-        final int s = calc.getStackHeight();
-        for (int i = 0; (i < PANEL_SIZE); i++) {
-            JTextField val_field = (JTextField) row_value_panel.getComponent(PANEL_SIZE - 1 - i);
-            if (i < s) {
-                val_field.setText(calc.getStackEntry(s - 1 - i));
+    class StackListModel extends AbstractListModel<String> implements RPNStackListener {
+        private RPNCalc calc = null;
+        private int height = 0; // the stack height.
+        private int size = PANEL_SIZE; // the number of rows.
+
+        public int getSize() {
+            return size;
+        }
+
+        public String getElementAt(int index) {
+            final int i = index - (size - height);
+            if ((calc == null) || (i < 0) || (i >= height)) {
+                return null;
+            }
+            return calc.getStackEntry(i);
+        }
+
+        void setCalc(RPNCalc c) {
+            if (c == calc) {
+                return;
+            }
+            if (calc != null) {
+                calc.removeStackListener(this);
+            }
+            calc = c;
+            calc.addStackListener(this);
+            updatePrototype(calc.getDisplayPrecision());
+            final int old_size = size;
+            resize();
+            fireContentsChanged(this, 0, Math.min(old_size, size) - 1);
+        }
+
+        public void stackChanged(RPNStackEvent e) {
+            if (e.getType() == RPNStackEvent.Type.DISP_MODE) {
+                // the display precision may have changed too.
+                updatePrototype(calc.getDisplayPrecision());
+                fireContentsChanged(this, 0, size - 1);
+                return;
+            }
+
+            final int old_height = height;
+            final int old_size = size;
+            if ((old_height >= PANEL_SIZE) && (calc.getStackHeight() >= PANEL_SIZE)) {
+                // there are no blank rows, so rows and entries line up.
+                height = calc.getStackHeight();
+                size = height;
+                final int index = e.getIndex();
+                final int common = Math.min(e.getRemoved(), e.getAdded());
+                if (common > 0) {
+                    fireContentsChanged(this, index, index + common - 1);
+                }
+                if (e.getAdded() > common) {
+                    fireIntervalAdded(this, index + common, index + e.getAdded() - 1);
+                } else if (e.getRemoved() > common) {
+                    fireIntervalRemoved(this, index + common, index + e.getRemoved() - 1);
+                }
             } else {
-                val_field.setText(null);
+                // the blank rows move, so the first PANEL_SIZE rows all change.
+                resize();
+                fireContentsChanged(this, 0, Math.min(old_size, size) - 1);
+            }
+            scrollToX();
+        }
+
+        /**
+         * Adds or removes rows at the end of the list to match the height of
+         * the stack.
+         */
+        private void resize() {
+            final int old_size = size;
+            height = calc.getStackHeight();
+            size = Math.max(height, PANEL_SIZE);
+            if (size < old_size) {
+                fireIntervalRemoved(this, size, old_size - 1);
+            } else if (size > old_size) {
+                fireIntervalAdded(this, old_size, size - 1);
             }
         }
-        repaint();
     }
-}
 
+    /**
+     * Renders a row as a label and a right-aligned value. A single instance
+     * is reused for every row.
+     */
+    class RowRenderer extends JPanel implements ListCellRenderer<String> {
+        private JLabel row_label;
+        private JLabel row_value;
+        private Font plain_font;
+        private Font bold_font;
+        private final Color X_BACKGROUND = new Color(255, 255, 204);
+
+        RowRenderer() {
+            BorderLayout layout = new BorderLayout();
+            layout.setHgap(2);
+            setLayout(layout);
+
+            row_label = new JLabel("0000000");
+            row_label.setHorizontalAlignment(JLabel.CENTER);
+            row_label.setPreferredSize(row_label.getPreferredSize());
+            add(row_label, BorderLayout.WEST);
+
+            row_value = new JLabel();
+            row_value.setOpaque(true);
+            row_value.setHorizontalAlignment(JLabel.RIGHT);
+            row_value.setBorder(new EmptyBorder(1, 4, 1, 4));
+            add(row_value, BorderLayout.CENTER);
+
+            plain_font = UIManager.getFont("TextField.font");
+            if (plain_font == null) {
+                plain_font = row_value.getFont();
+            }
+            bold_font = plain_font.deriveFont(Font.BOLD);
+            setBorder(new EmptyBorder(1, 0, 1, 0));
+        }
+
+        public Component getListCellRendererComponent(JList<? extends String> list,
+                String value, int index, boolean selected, boolean focused) {
+            final int pos = list.getModel().getSize() - 1 - index;
+            row_label.setText(getRowLabel(pos));
+            row_value.setText(value);
+            if (pos == 0) {
+                row_value.setFont(bold_font);
+                row_value.setBackground(X_BACKGROUND);
+            } else {
+                row_value.setFont(plain_font);
+                row_value.setBackground(Color.WHITE);
+            }
+            setBackground(list.getBackground());
+            return this;
+        }
+    }
+}
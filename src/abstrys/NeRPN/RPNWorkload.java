@@ -0,0 +1,203 @@
+//  NeRPN: A minimalistic RPN Calculator in Java.
+//  Copyright © 2007-2019 Eron J. Hennessey
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+package abstrys.NeRPN;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * Generates a repeatable stream of RPN expressions for load testing.
+ *
+ * Each expression is one line of tokens, built so that it leaves a single
+ * value on the stack. The mix covers plain and unusual literals, the
+ * arithmetic, transcendental and stack operations, constants, occasional
+ * deep-stack expressions, and a small share of expressions that fail
+ * (division by zero, invalid tokens, too few elements on the stack). The
+ * same seed always produces the same stream.
+ */
+public class RPNWorkload {
+
+    final String BINARY_OPS[] = {
+        "+", "+", "+", "-", "-", "*", "*", "*", "/", "/", "max", "min", "hyp", "%"
+    };
+    final String UNARY_OPS[] = {
+        "abs", "neg", "sqrt", "inv", "ln", "log", "sin", "cos", "tan", "atan",
+        "floor", "ceil", "cbrt", "sinh", "tanh", "deg", "rad", "exp"
+    };
+    final String CONSTANTS[] = {
+        "PI", "E", "rand"
+    };
+    final String BAD_EXPRESSIONS[] = {
+        "1 0 /", "1.2.3", "foo", "-4 sqrt", "2.5 !", "0 inv", "1e2x", "swap swap"
+    };
+
+    // the share of each kind of expression, in percent.
+    final int PCT_ERROR = 2;
+    final int PCT_DEEP = 3;
+    final int PCT_STACK = 10;
+
+    private SplittableRandom rng;
+
+    public RPNWorkload(long seed) {
+        rng = new SplittableRandom(seed);
+    }
+
+    /**
+     * Returns the next expression, as a line of space-separated tokens.
+     */
+    public String nextExpression() {
+        final int kind = rng.nextInt(100);
+        if (kind < PCT_ERROR) {
+            return BAD_EXPRESSIONS[rng.nextInt(BAD_EXPRESSIONS.length)];
+        } else if (kind < PCT_ERROR + PCT_DEEP) {
+            return deepExpression();
+        } else if (kind < PCT_ERROR + PCT_DEEP + PCT_STACK) {
+            return stackExpression();
+        }
+        return mixedExpression();
+    }
+
+    /**
+     * Writes a number of expressions to a file, one per line.
+     */
+    public void write(Path path, int count) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.US_ASCII)) {
+            for (int i = 0; i < count; i++) {
+                out.write(nextExpression());
+                out.newLine();
+            }
+        }
+    }
+
+    /**
+     * A mix of values and operations, such as "3 4.5 + 2 ^ sqrt".
+     */
+    private String mixedExpression() {
+        StringBuilder sb = new StringBuilder();
+        int depth = 0;
+        final int length = 3 + rng.nextInt(10);
+        for (int i = 0; (i < length) || (depth > 1); i++) {
+            final int r = rng.nextInt(100);
+            if ((depth < 2) || ((i < length) && (r < 40))) {
+                appendValue(sb);
+                depth++;
+            } else if ((r < 55) && (i < length)) {
+                appendToken(sb, UNARY_OPS[rng.nextInt(UNARY_OPS.length)]);
+            } else if ((r < 60) && (i < length)) {
+                // factorials and powers get small integer operands, as they
+                // would in practice.
+                appendToken(sb, String.valueOf(rng.nextInt(25)));
+                if (rng.nextInt(2) == 0) {
+                    appendToken(sb, "!");
+                    depth++;
+                } else {
+                    appendToken(sb, "^");
+                }
+            } else {
+                appendToken(sb, BINARY_OPS[rng.nextInt(BINARY_OPS.length)]);
+                depth--;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Values shuffled around with dup, swap, rot and del.
+     */
+    private String stackExpression() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 3; i++) {
+            appendValue(sb);
+        }
+        int depth = 3;
+        final int length = 4 + rng.nextInt(12);
+        for (int i = 0; i < length; i++) {
+            switch (rng.nextInt(4)) {
+            case 0:
+                appendToken(sb, "dup");
+                depth++;
+                break;
+            case 1:
+                appendToken(sb, "swap");
+                break;
+            case 2:
+                appendToken(sb, "rot");
+                break;
+            default:
+                if (depth > 3) {
+                    appendToken(sb, "del");
+                    depth--;
+                } else {
+                    appendToken(sb, "swap");
+                }
+                break;
+            }
+        }
+        for (; depth > 1; depth--) {
+            appendToken(sb, "+");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Builds a stack hundreds of entries deep, then folds it into one value.
+     */
+    private String deepExpression() {
+        StringBuilder sb = new StringBuilder();
+        final int n = 50 + rng.nextInt(450);
+        for (int i = 0; i < n; i++) {
+            appendValue(sb);
+        }
+        for (int i = 1; i < n; i++) {
+            appendToken(sb, (rng.nextInt(4) == 0) ? "*" : "+");
+        }
+        return sb.toString();
+    }
+
+    private void appendValue(StringBuilder sb) {
+        final int r = rng.nextInt(100);
+        if (r < 50) {
+            appendToken(sb, String.valueOf(rng.nextInt(1000)));
+        } else if (r < 80) {
+            appendToken(sb, rng.nextInt(10000) + "." + rng.nextInt(1000));
+        } else if (r < 88) {
+            appendToken(sb, "-" + rng.nextInt(100) + "." + rng.nextInt(100));
+        } else if (r < 94) {
+            appendToken(sb, CONSTANTS[rng.nextInt(CONSTANTS.length)]);
+        } else if (r < 98) {
+            appendToken(sb, (1 + rng.nextInt(9)) + "." + rng.nextInt(100) + "e" + (rng.nextInt(40) - 20));
+        } else {
+            // a literal too long for a long.
+            StringBuilder digits = new StringBuilder();
+            digits.append(1 + rng.nextInt(9));
+            for (int i = 0; i < 30; i++) {
+                digits.append(rng.nextInt(10));
+            }
+            appendToken(sb, digits.toString());
+        }
+    }
+
+    private static void appendToken(StringBuilder sb, String token) {
+        if (sb.length() > 0) {
+            sb.append(' ');
+        }
+        sb.append(token);
+    }
+}